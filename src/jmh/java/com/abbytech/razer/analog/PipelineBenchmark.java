@@ -0,0 +1,58 @@
+package com.abbytech.razer.analog;
+
+import com.abbytech.razer.analog.bench.BenchmarkConfigs;
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.ChordEngine;
+import com.abbytech.razer.analog.hid.HIDDecoder;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.hid.KeyActuation;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.virtual.ConfigurableInputDevice;
+import com.abbytech.razer.analog.virtual.NullEventSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//decode + Main.handleEvent per report, writing into no-op sinks so no keyboard or /dev/uinput is needed
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+    @Param({"testDeviceConfig.json", "testDeviceConfig2.json"})
+    public String config;
+    @Param
+    public Reports.Scenario scenario;
+    @Param({"true", "false"})
+    public boolean joystickEnabled;
+
+    private HIDDecoder decoder;
+    private final HidFrame frame = new HidFrame();
+    private ByteBuffer[] reports;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        InputDeviceConfig inputDeviceConfig = BenchmarkConfigs.load(config);
+        NullEventSink keyboardSink = new NullEventSink();
+        keyboardSink.open();
+        Main.init(keyboardSink, new ConfigurableInputDevice(new NullEventSink(), inputDeviceConfig, layout));
+        Main.setKeyActuation(new KeyActuation(inputDeviceConfig, layout));
+        Main.setChordEngine(new ChordEngine(inputDeviceConfig, layout, action -> {}));
+        Main.setJoystickEnabled(joystickEnabled);
+        decoder = new HIDDecoder(layout);
+        reports = Reports.create(scenario, layout, inputDeviceConfig.getInputOutputMapping().keySet());
+    }
+
+    @Benchmark
+    public HidFrame handleEvent() {
+        ByteBuffer report = reports[next];
+        next = next + 1 == reports.length ? 0 : next + 1;
+        decoder.decode(report.rewind(), frame);
+        Main.handleEvent(frame);
+        return frame;
+    }
+}
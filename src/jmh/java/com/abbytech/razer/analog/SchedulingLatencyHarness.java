@@ -0,0 +1,113 @@
+package com.abbytech.razer.analog;
+
+import com.abbytech.razer.analog.metrics.LatencyHistogram;
+import com.abbytech.razer.analog.util.ThreadPlacement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//wake-up latency of a reader thread handed a report every millisecond by a usb event thread, while spinning and
+//allocating threads load every cpu: first with normal scheduling, then with both threads placed by ThreadPlacement
+//(-Drazer.sched, fifo unless set, and -Drazer.cpus.reader/-Drazer.cpus.usb). the latency runs from the hand-off until
+//the reader runs, which is what a report waits for its thread under contention.
+//args: [seconds per mode] [load threads]; ./gradlew schedLatency -PschedArgs="..."
+public final class SchedulingLatencyHarness {
+    private static final long PERIOD_NANOS = 1_000_000; //1000 Hz polling
+    private static final int WARMUP_SECONDS = 2;
+    private static volatile long sink;
+
+    private SchedulingLatencyHarness() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int loadThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        if (System.getProperty("razer.sched") == null)
+            System.setProperty("razer.sched", "fifo");
+
+        System.out.printf("%d load threads on %d cpus, %d s per mode%n", loadThreads, Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("thread main: %s%n", ThreadPlacement.describe()); //also loads libc before measuring
+        AtomicBoolean loading = new AtomicBoolean(true);
+        List<Thread> load = new ArrayList<>();
+        for (int i = 0; i < loadThreads; i++) {
+            Thread thread = new Thread(() -> load(loading), "load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            load.add(thread);
+        }
+        measure(WARMUP_SECONDS, false);
+        Result normal = measure(seconds, false);
+        Result placed = measure(seconds, true);
+        loading.set(false);
+        for (Thread thread : load) {
+            thread.join();
+        }
+        System.out.printf("normal: %s, %d reports replaced before they were taken%n", normal.histogram(), normal.overrun());
+        System.out.printf("placed: %s, %d reports replaced before they were taken%n", placed.histogram(), placed.overrun());
+    }
+
+    private record Result(LatencyHistogram histogram, long overrun) {
+    }
+
+    private static Result measure(int seconds, boolean place) throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        AtomicLong handedOver = new AtomicLong(); //nanoTime of the report not taken yet, 0 when there is none
+        AtomicLong overrun = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            if (place)
+                ThreadPlacement.apply(ThreadPlacement.Role.READER);
+            while (running.get()) {
+                long sent = handedOver.getAndSet(0);
+                if (sent != 0)
+                    histogram.record(System.nanoTime() - sent);
+                else
+                    LockSupport.park();
+            }
+        }, "hid-reader");
+        Thread usb = new Thread(() -> {
+            if (place)
+                ThreadPlacement.apply(ThreadPlacement.Role.USB);
+            long deadline = System.nanoTime();
+            while (running.get()) {
+                deadline += PERIOD_NANOS;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                long now = System.nanoTime();
+                long previous = handedOver.getAndSet(now);
+                if (previous != 0) {
+                    overrun.incrementAndGet();
+                    histogram.record(now - previous); //never taken; waited at least this long
+                }
+                LockSupport.unpark(reader);
+            }
+        }, "usb-events");
+        reader.start();
+        usb.start();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        usb.join();
+        LockSupport.unpark(reader);
+        reader.join();
+        return new Result(histogram, overrun.get());
+    }
+
+    //busy cpu work with some allocation, so the collector runs as well
+    private static void load(AtomicBoolean loading) {
+        long value = 0;
+        while (loading.get()) {
+            for (int i = 0; i < 100_000; i++) {
+                value = value * 31 + i;
+            }
+            long[] garbage = new long[256];
+            garbage[(int) (value & 255)] = value;
+            value += garbage[0];
+        }
+        sink = value;
+    }
+}
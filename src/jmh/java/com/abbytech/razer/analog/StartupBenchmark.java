@@ -0,0 +1,69 @@
+package com.abbytech.razer.analog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//process start until the first decoded report, replaying a capture without virtual devices. one process per
+//invocation; the score is the launcher's view, the time the process itself reports is returned for reference.
+//paths come from the jmh block in build.gradle (-PstartupCapture=<capture file>)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+    public enum Launch {
+        JAR,
+        CDS,
+        NATIVE
+    }
+
+    @Param
+    public Launch launch;
+
+    private List<String> command;
+
+    @Setup
+    public void setup() {
+        command = new ArrayList<>();
+        switch (launch) {
+            case JAR -> command.addAll(List.of(property("startup.java"), "-jar", property("startup.jar")));
+            case CDS -> command.addAll(List.of(property("startup.java"), "-XX:SharedArchiveFile=" + property("startup.cds"), "-Xshare:on", "-jar", property("startup.jar")));
+            case NATIVE -> command.add(property("startup.native"));
+        }
+        command.add(1, "-Drazer.output=none");
+        command.add(2, "-Drazer.startup.exit=true");
+        command.addAll(List.of(property("startup.config"), "--replay", property("startup.capture"), "--replay-fast"));
+    }
+
+    private static String property(String name) {
+        String value = System.getProperty(name);
+        if (value == null || !Files.exists(Path.of(value))) {
+            throw new IllegalStateException(name + " not found: " + value + "; build shadowJar, cdsArchive and nativeCompile first");
+        }
+        return value;
+    }
+
+    @Benchmark
+    public long firstReport() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = process.inputReader()) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("first report after "))
+                    return Long.parseLong(line.substring("first report after ".length(), line.indexOf(" ms")));
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+        throw new IllegalStateException("no report decoded by " + command);
+    }
+}
@@ -0,0 +1,116 @@
+package com.abbytech.razer.analog;
+
+import com.abbytech.razer.analog.bench.BenchmarkConfigs;
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.ChordEngine;
+import com.abbytech.razer.analog.hid.KeyActuation;
+import com.abbytech.razer.analog.hid.KeyFilter;
+import com.abbytech.razer.analog.hid.Keyboard;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.protocol.MemoryReportSource;
+import com.abbytech.razer.analog.util.SpscRing;
+import com.abbytech.razer.analog.virtual.ConfigurableInputDevice;
+import com.abbytech.razer.analog.virtual.NullEventSink;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//sustained load through Keyboard -> Main.handleEvent -> ConfigurableInputDevice, from an in-memory report source
+//into no-op sinks. prints throughput, allocation and the per stage latency percentiles (needs -Drazer.metrics=true).
+//exits with 1 when -Dstress.minReportsPerSecond, -Dstress.maxBytesPerReport or -Dstress.maxP99Nanos is missed.
+//args: [config] [scenario] [seconds] [ring wait strategy]; ./gradlew stress -PstressArgs="..."
+public final class StressHarness {
+    private static final int WARMUP_SECONDS = 3;
+
+    private StressHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String config = args.length > 0 ? args[0] : "testDeviceConfig.json";
+        Reports.Scenario scenario = args.length > 1 ? Reports.Scenario.valueOf(args[1]) : Reports.Scenario.OSCILLATION;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        SpscRing.WaitStrategy waitStrategy = args.length > 3 ? SpscRing.WaitStrategy.valueOf(args[3]) : null;
+
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        InputDeviceConfig inputDeviceConfig = BenchmarkConfigs.load(config);
+        NullEventSink keyboardSink = new NullEventSink();
+        keyboardSink.open();
+        NullEventSink gamepadSink = new NullEventSink();
+        Main.init(keyboardSink, new ConfigurableInputDevice(gamepadSink, inputDeviceConfig, layout));
+        Main.setKeyFilter(new KeyFilter(inputDeviceConfig, layout));
+        Main.setKeyActuation(new KeyActuation(inputDeviceConfig, layout));
+        Main.setChordEngine(new ChordEngine(inputDeviceConfig, layout, action -> {}));
+        Main.setJoystickEnabled(true);
+        ByteBuffer[] reports = Reports.create(scenario, layout, inputDeviceConfig.getInputOutputMapping().keySet());
+
+        System.out.printf("%s, %s, %s, warmup %d s, measuring %d s%n", config, scenario,
+                waitStrategy != null ? "ring " + waitStrategy : "direct", WARMUP_SECONDS, seconds);
+        run(reports, layout, waitStrategy, WARMUP_SECONDS);
+        PipelineMetrics.getInstance().reset();
+        long keyboardFrames = keyboardSink.getFrames();
+        long gamepadFrames = gamepadSink.getFrames();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long count = run(reports, layout, waitStrategy, seconds);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+
+        double reportsPerSecond = count / elapsedSeconds;
+        double bytesPerReport = (double) allocated / count;
+        System.out.printf("reports: %d (%.0f/s)%n", count, reportsPerSecond);
+        System.out.printf("writes: keyboard %d, gamepad %d%n", keyboardSink.getFrames() - keyboardFrames, gamepadSink.getFrames() - gamepadFrames);
+        System.out.printf("allocated: %.1f MB/s, %.3f bytes/report (all threads)%n", allocated / elapsedSeconds / 1e6, bytesPerReport);
+        long p99 = -1;
+        if (PipelineMetrics.ENABLED) {
+            System.out.print(PipelineMetrics.getInstance().dump());
+            p99 = PipelineMetrics.getHistogram(PipelineMetrics.Stage.END_TO_END).getPercentile(99);
+        } else {
+            System.out.println("latencies: run with -Drazer.metrics=true");
+        }
+
+        boolean failed = false;
+        long minReportsPerSecond = Long.getLong("stress.minReportsPerSecond", 0);
+        if (reportsPerSecond < minReportsPerSecond) {
+            System.out.printf("FAILED: %.0f reports/s below %d%n", reportsPerSecond, minReportsPerSecond);
+            failed = true;
+        }
+        String maxBytesPerReport = System.getProperty("stress.maxBytesPerReport");
+        if (maxBytesPerReport != null && bytesPerReport > Double.parseDouble(maxBytesPerReport)) {
+            System.out.printf("FAILED: %.3f bytes/report above %s%n", bytesPerReport, maxBytesPerReport);
+            failed = true;
+        }
+        long maxP99Nanos = Long.getLong("stress.maxP99Nanos", Long.MAX_VALUE);
+        if (p99 > maxP99Nanos) {
+            System.out.printf("FAILED: end to end p99 %d ns above %d%n", p99, maxP99Nanos);
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    //returns the number of reports read
+    private static long run(ByteBuffer[] reports, HuntsmanV3ProLayout layout, SpscRing.WaitStrategy waitStrategy, int seconds) throws InterruptedException {
+        MemoryReportSource source = new MemoryReportSource(reports);
+        Keyboard keyboard = new Keyboard(source, layout);
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            } catch (InterruptedException e) {
+                return;
+            }
+            keyboard.closeIfOpen();
+        }, "stress-stopper");
+        stopper.setDaemon(true);
+        stopper.start();
+        if (waitStrategy != null)
+            keyboard.listenFrames(Main::handleEvent, waitStrategy, false);
+        else
+            keyboard.listenFrames(Main::handleEvent);
+        stopper.join();
+        return source.getReads();
+    }
+}
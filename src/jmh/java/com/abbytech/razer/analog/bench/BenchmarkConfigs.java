@@ -0,0 +1,21 @@
+package com.abbytech.razer.analog.bench;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//loads the bundled testDeviceConfig*.json mappings, copied onto the jmh classpath by the build
+public final class BenchmarkConfigs {
+    private BenchmarkConfigs() {
+    }
+
+    public static InputDeviceConfig load(String name) throws IOException {
+        try (InputStream inputStream = BenchmarkConfigs.class.getResourceAsStream("/" + name)) {
+            if (inputStream == null)
+                throw new IOException("config not found on classpath: " + name);
+            return new ObjectMapper().readValue(inputStream, InputDeviceConfig.class);
+        }
+    }
+}
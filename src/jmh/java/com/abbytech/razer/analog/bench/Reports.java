@@ -0,0 +1,103 @@
+package com.abbytech.razer.analog.bench;
+
+import com.abbytech.razer.analog.layout.Layout;
+import com.abbytech.razer.analog.protocol.Constants;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+//synthetic analog reports in the keyboard's wire format: start byte, then (key code, big endian u16 travel) triples
+public final class Reports {
+    public static final int OSCILLATION_STEPS = 64;
+    public static final int JITTER_STEPS = 256;
+    public static final int JITTER_AMPLITUDE = 8; //hall effect sensors wobble by a few units at rest
+
+    public enum Scenario {
+        IDLE, ONE_KEY, SIX_KEYS, ALL_KEYS, OSCILLATION, JITTER
+    }
+
+    private Reports() {
+    }
+
+    //one cycle of reports for the scenario; preferred keys (e.g. the mapped ones) are pressed first
+    public static ByteBuffer[] create(Scenario scenario, Layout layout, Collection<EventCode> preferredKeys) {
+        int[] keyCodes = pickKeys(layout, preferredKeys);
+        return switch (scenario) {
+            case IDLE -> new ByteBuffer[]{report(keyCodes, 0, 0)};
+            case ONE_KEY -> new ByteBuffer[]{report(keyCodes, 1, 0xFFFF)};
+            case SIX_KEYS -> new ByteBuffer[]{report(keyCodes, 6, 0xFFFF)};
+            case ALL_KEYS -> new ByteBuffer[]{report(keyCodes, keyCodes.length, 0xFFFF)};
+            case OSCILLATION -> oscillation(keyCodes, 6);
+            case JITTER -> jitter(keyCodes, 6);
+        };
+    }
+
+    //keys travel up and down as triangle waves with staggered phases
+    private static ByteBuffer[] oscillation(int[] keyCodes, int keyCount) {
+        ByteBuffer[] reports = new ByteBuffer[OSCILLATION_STEPS];
+        for (int step = 0; step < OSCILLATION_STEPS; step++) {
+            ByteBuffer report = newReport();
+            for (int key = 0; key < keyCount; key++) {
+                int phase = (step + key * OSCILLATION_STEPS / keyCount) % OSCILLATION_STEPS;
+                int half = OSCILLATION_STEPS / 2;
+                int travel = (phase < half ? phase : OSCILLATION_STEPS - phase) * 0xFFFF / half;
+                report.put((byte) keyCodes[key]).putShort((short) travel);
+            }
+            reports[step] = report.rewind();
+        }
+        return reports;
+    }
+
+    //keys held at different depths with deterministic noise of +-JITTER_AMPLITUDE
+    private static ByteBuffer[] jitter(int[] keyCodes, int keyCount) {
+        ByteBuffer[] reports = new ByteBuffer[JITTER_STEPS];
+        int seed = 1;
+        for (int step = 0; step < JITTER_STEPS; step++) {
+            ByteBuffer report = newReport();
+            for (int key = 0; key < keyCount; key++) {
+                seed = seed * 1103515245 + 12345;
+                int noise = ((seed >>> 16) % (2 * JITTER_AMPLITUDE + 1)) - JITTER_AMPLITUDE;
+                int travel = (key + 1) * 0xFFFF / (keyCount + 1) + noise;
+                report.put((byte) keyCodes[key]).putShort((short) travel);
+            }
+            reports[step] = report.rewind();
+        }
+        return reports;
+    }
+
+    private static ByteBuffer report(int[] keyCodes, int keyCount, int travel) {
+        ByteBuffer report = newReport();
+        for (int key = 0; key < keyCount; key++) {
+            report.put((byte) keyCodes[key]).putShort((short) travel);
+        }
+        return report.rewind();
+    }
+
+    private static ByteBuffer newReport() {
+        ByteBuffer report = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+        report.put(Constants.hidStartByte);
+        return report;
+    }
+
+    private static int[] pickKeys(Layout layout, Collection<EventCode> preferredKeys) {
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        Set<Integer> keyCodes = new LinkedHashSet<>();
+        for (EventCode preferredKey : preferredKeys) {
+            for (int keyCode = 1; keyCode < eventCodeMap.length; keyCode++) {
+                if (eventCodeMap[keyCode] == preferredKey)
+                    keyCodes.add(keyCode);
+            }
+        }
+        for (int keyCode = 1; keyCode < eventCodeMap.length; keyCode++) {
+            if (eventCodeMap[keyCode] != EventCode.KEY_RESERVED)
+                keyCodes.add(keyCode);
+        }
+        List<Integer> picked = new ArrayList<>(keyCodes).subList(0, (Constants.HID_DATA_LENGTH - 1) / 3);
+        return picked.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,47 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import org.openjdk.jmh.annotations.*;
+import uk.co.bithatch.linuxio.InputDevice;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HIDDecoderBenchmark {
+    @Param
+    public Reports.Scenario scenario;
+
+    private HIDDecoder decoder;
+    private final HidFrame frame = new HidFrame();
+    private ByteBuffer[] reports;
+    private int next;
+
+    @Setup
+    public void setup() {
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        decoder = new HIDDecoder(layout);
+        reports = Reports.create(scenario, layout, List.of());
+    }
+
+    @Benchmark
+    public HidFrame decode() {
+        decoder.decode(nextReport(), frame);
+        return frame;
+    }
+
+    @Benchmark
+    public List<InputDevice.Event> toInputDeviceEvent() {
+        return decoder.toInputDeviceEvent(nextReport());
+    }
+
+    private ByteBuffer nextReport() {
+        ByteBuffer report = reports[next];
+        next = next + 1 == reports.length ? 0 : next + 1;
+        return report.rewind();
+    }
+}
@@ -0,0 +1,77 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.bench.BenchmarkConfigs;
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.virtual.ConfigurableInputDevice;
+import com.abbytech.razer.analog.virtual.NullEventSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//decode + key filter + gamepad mapping per report. the auxiliary counters give the gamepad events and writes
+//per second next to the report rate, so the filters' event reduction (JITTER) and their cost on fast travel
+//(OSCILLATION) can be compared against NONE
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyFilterBenchmark {
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000; //1000 Hz polling
+
+    @Param({"testDeviceConfig.json"})
+    public String config;
+    @Param({"JITTER", "OSCILLATION"})
+    public Reports.Scenario scenario;
+    @Param
+    public InputDeviceConfig.KeyFilterType filter;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Emitted {
+        public long events;
+        public long writes;
+    }
+
+    private HIDDecoder decoder;
+    private KeyFilter keyFilter;
+    private ConfigurableInputDevice gamepad;
+    private NullEventSink sink;
+    private final HidFrame frame = new HidFrame();
+    private ByteBuffer[] reports;
+    private int next;
+    private long timestamp;
+
+    @Setup
+    public void setup() throws IOException {
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        InputDeviceConfig inputDeviceConfig = BenchmarkConfigs.load(config);
+        InputDeviceConfig.KeyFilterConfig keyFilterConfig = new InputDeviceConfig.KeyFilterConfig();
+        keyFilterConfig.setType(filter);
+        inputDeviceConfig.setDefaultKeyFilter(keyFilterConfig);
+        keyFilter = new KeyFilter(inputDeviceConfig, layout);
+        sink = new NullEventSink();
+        gamepad = new ConfigurableInputDevice(sink, inputDeviceConfig, layout);
+        gamepad.open();
+        decoder = new HIDDecoder(layout);
+        reports = Reports.create(scenario, layout, inputDeviceConfig.getInputOutputMapping().keySet());
+    }
+
+    @Benchmark
+    public HidFrame filterAndMap(Emitted emitted) {
+        ByteBuffer report = reports[next];
+        next = next + 1 == reports.length ? 0 : next + 1;
+        decoder.decode(report.rewind(), frame);
+        timestamp += REPORT_INTERVAL_NANOS;
+        frame.setTimestamp(timestamp);
+        keyFilter.apply(frame);
+        long events = sink.getEvents();
+        long writes = sink.getFrames();
+        gamepad.handle(frame);
+        emitted.events += sink.getEvents() - events;
+        emitted.writes += sink.getFrames() - writes;
+        return frame;
+    }
+}
@@ -0,0 +1,146 @@
+package com.abbytech.razer.analog.protocol;
+
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.hid.HIDDecoder;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.util.SpscRing;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//per report overhead of reading and decoding, with a named pipe kept full by a writer thread standing in for the
+//board. HIDRAW is HidrawReportSource reading the pipe on the calling thread; LIBUSB has the structure of the libusb
+//path (AsyncHIDReader): an event thread copies every completed report into a slot ring the reader takes it from.
+//libusb itself needs the board, so that event thread reads the pipe instead of completing transfers and the JNA
+//calls of the real path come on top of the LIBUSB figure
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReportSourceBenchmark {
+    public enum Backend {
+        HIDRAW, LIBUSB
+    }
+
+    @Param
+    public Backend backend;
+
+    private final HidFrame frame = new HidFrame();
+    private HIDDecoder decoder;
+    private Path directory;
+    private Path pipe;
+    private Thread writer;
+    private ReportSource source;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        decoder = new HIDDecoder(layout);
+        ByteBuffer[] reports = Reports.create(Reports.Scenario.OSCILLATION, layout, List.of());
+        directory = Files.createTempDirectory("razer-reports");
+        pipe = directory.resolve("hidraw");
+        if (new ProcessBuilder("mkfifo", pipe.toString()).inheritIO().start().waitFor() != 0) {
+            throw new IOException("mkfifo failed: " + pipe);
+        }
+        writer = new Thread(() -> write(pipe, reports), "report-writer");
+        writer.setDaemon(true);
+        writer.start();
+        HidrawReportSource hidraw = new HidrawReportSource(pipe);
+        source = backend == Backend.HIDRAW ? hidraw : new EventThreadReportSource(hidraw);
+        source.openDevice(); //opening the pipe waits for the writer
+    }
+
+    //whole reports, so every read of HID_DATA_LENGTH bytes returns exactly one like a hidraw node does;
+    //ends when the reading side is closed
+    private static void write(Path pipe, ByteBuffer[] reports) {
+        try (FileChannel channel = FileChannel.open(pipe, StandardOpenOption.WRITE)) {
+            while (true) {
+                for (ByteBuffer report : reports) {
+                    report.rewind();
+                    while (report.hasRemaining()) {
+                        channel.write(report);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            //broken pipe
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        source.closeDevice();
+        writer.join();
+        Files.deleteIfExists(pipe);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public HidFrame read() {
+        decoder.decode(source.readHIDData(), frame);
+        return frame;
+    }
+
+    //the hand-off of AsyncHIDReader around a source read by its own event thread
+    private static final class EventThreadReportSource implements ReportSource {
+        private static final int SLOT_COUNT = 64;
+
+        private final ReportSource source;
+        private final SpscRing<ByteBuffer> reports = new SpscRing<>(SLOT_COUNT, () -> ByteBuffer.allocate(Constants.HID_DATA_LENGTH),
+                SpscRing.WaitStrategy.PARK, false);
+        private Thread eventThread;
+
+        private EventThreadReportSource(ReportSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public void openDevice() {
+            source.openDevice();
+            eventThread = new Thread(this::handleEvents, "usb-events");
+            eventThread.setDaemon(true);
+            eventThread.start();
+        }
+
+        private void handleEvents() {
+            ByteBuffer data;
+            while ((data = source.readHIDData()) != null) {
+                ByteBuffer report = reports.tryClaim();
+                if (report == null)
+                    continue; //reader behind; dropped like in AsyncHIDReader
+                report.clear();
+                report.put(0, data, 0, data.remaining());
+                report.limit(data.remaining());
+                reports.publish();
+            }
+            reports.close();
+        }
+
+        @Override
+        public void closeDevice() {
+            source.closeDevice();
+            try {
+                eventThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isDeviceOpen() {
+            return source.isDeviceOpen();
+        }
+
+        @Override
+        public ByteBuffer readHIDData() {
+            return reports.take();
+        }
+    }
+}
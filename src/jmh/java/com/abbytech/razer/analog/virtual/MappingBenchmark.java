@@ -0,0 +1,73 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.bench.BenchmarkConfigs;
+import com.abbytech.razer.analog.bench.Reports;
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.HIDDecoder;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import org.openjdk.jmh.annotations.*;
+import uk.co.bithatch.linuxio.InputDevice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//MappingTable against the original stream mapper (ReferenceMapper, from the test fixtures) on the same decoded frames
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MappingBenchmark {
+    @Param({"testDeviceConfig.json", "testDeviceConfig2.json"})
+    public String config;
+    @Param
+    public Reports.Scenario scenario;
+
+    private MappingTable mappingTable;
+    private OutputFrame outputFrame;
+    private ReferenceMapper referenceMapper;
+    private HidFrame[] frames;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        HuntsmanV3ProLayout layout = new HuntsmanV3ProLayout();
+        InputDeviceConfig inputDeviceConfig = BenchmarkConfigs.load(config);
+        mappingTable = new MappingTable(inputDeviceConfig, layout);
+        outputFrame = new OutputFrame(mappingTable.getSlotCount());
+        referenceMapper = new ReferenceMapper(inputDeviceConfig.getInputOutputMapping(), inputDeviceConfig.getDefaultActuationPoint());
+
+        HIDDecoder decoder = new HIDDecoder(layout);
+        ByteBuffer[] reports = Reports.create(scenario, layout, inputDeviceConfig.getInputOutputMapping().keySet());
+        frames = new HidFrame[reports.length];
+        for (int i = 0; i < reports.length; i++) {
+            frames[i] = new HidFrame();
+            decoder.decode(reports[i], frames[i]);
+        }
+    }
+
+    @Benchmark
+    public OutputFrame mappingTable() {
+        mappingTable.map(nextFrame(), outputFrame);
+        return outputFrame;
+    }
+
+    @Benchmark
+    public List<InputDevice.Event> referenceMapper() {
+        HidFrame frame = nextFrame();
+        List<InputDevice.Event> events = new ArrayList<>();
+        for (int i = 0; i < frame.size(); i++) {
+            if (referenceMapper.canHandle(frame.getEventCode(i)))
+                events.add(new InputDevice.Event(frame.getEventCode(i), frame.getValue(i)));
+        }
+        return referenceMapper.mapToInputDeviceEvents(events);
+    }
+
+    private HidFrame nextFrame() {
+        HidFrame frame = frames[next];
+        next = next + 1 == frames.length ? 0 : next + 1;
+        return frame;
+    }
+}
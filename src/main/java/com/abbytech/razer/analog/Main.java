@@ -1,69 +1,409 @@
 package com.abbytech.razer.analog;
 
+import com.abbytech.razer.analog.capture.CapturingReportSource;
+import com.abbytech.razer.analog.capture.ReplayReportSource;
+import com.abbytech.razer.analog.config.CalibrationConfig;
+import com.abbytech.razer.analog.config.ConfigReloader;
 import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.control.ControlSocket;
+import com.abbytech.razer.analog.hid.CalibrationRecorder;
+import com.abbytech.razer.analog.hid.ChordEngine;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.hid.KeyActuation;
+import com.abbytech.razer.analog.hid.KeyCalibration;
+import com.abbytech.razer.analog.hid.KeyFilter;
 import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.protocol.BoardReportSource;
 import com.abbytech.razer.analog.protocol.Constants;
+import com.abbytech.razer.analog.protocol.HidrawReportSource;
 import com.abbytech.razer.analog.hid.Keyboard;
+import com.abbytech.razer.analog.hid.KeyboardManager;
+import com.abbytech.razer.analog.protocol.ReconnectingReportSource;
+import com.abbytech.razer.analog.protocol.ReportSource;
 import com.abbytech.razer.analog.protocol.USB;
+import com.abbytech.razer.analog.util.SpscRing;
 import com.abbytech.razer.analog.virtual.ConfigurableInputDevice;
+import com.abbytech.razer.analog.virtual.EventSink;
 import com.abbytech.razer.analog.virtual.GenericDevice;
+import com.abbytech.razer.analog.virtual.NullEventSink;
+import com.abbytech.razer.analog.virtual.StateCache;
+import com.abbytech.razer.analog.virtual.UInputDevice;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import uk.co.bithatch.linuxio.EventCode;
-import uk.co.bithatch.linuxio.InputDevice;
 
-import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.abbytech.razer.analog.protocol.Constants.HUNTSMAN_V3_PRO;
 
 public class Main {
-    private static InputDevice virtualKeyboard;
+    private static EventSink virtualKeyboard;
     private static GenericDevice mappingInputDevice;
     private static boolean joystickEnabled = false;
     private static final Object deviceLock = new Object();
-    private static Keyboard keyboard;
+    private static Keyboard keyboard; //first board; provides layout and capabilities
+    private static KeyboardManager keyboardManager; //only with more than one board
+    private static volatile KeyFilter keyFilter; //null when no key is filtered
+    private static volatile KeyActuation keyActuation; //null: every key actuates halfway
+    private static volatile ChordEngine chordEngine; //null: no chords
+    private static final boolean noOutput = "none".equals(System.getProperty("razer.output")); //no virtual devices, for startup measurements
+    private static boolean firstFrameHandled;
+    private static final StateCache keyStates = new StateCache(HidFrame.KEY_CODES * HidFrame.MAX_DEVICES); //indexed by HidFrame.getKey
+    private static ConfigurableInputDevice profileDevice; //gamepad the profiles' mappings belong to
+    private static volatile Profile[] profiles = new Profile[0]; //replaced as a whole on reload
+    private static Profile activeProfile; //handling thread, under deviceLock
+    private static ControlSocket controlSocket; //-Drazer.control
+    private static CalibrationRecorder calibrationRecorder; //--calibrate; handling thread, under deviceLock
+    private static List<Path> calibrationFiles; //one per board, written by --calibrate
+    private static final AtomicReference<Profile> requestedProfile = new AtomicReference<>(); //switched to before the next report
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("usage: java -jar <jar-name.jar> <device-config-file-path>");
+        if (args.length < 1) {
+            printUsage();
             return;
         }
-        String outputDeviceConfigJsonFile = args[0];
-        File file = new File(outputDeviceConfigJsonFile);
-        InputDeviceConfig inputDeviceConfig = new ObjectMapper().readValue(file, InputDeviceConfig.class);
+        List<Path> profileFiles = new ArrayList<>(List.of(Path.of(args[0])));
+        Path captureFile = null;
+        Path replayFile = null;
+        boolean replayRealtime = true;
+        Path calibrationFile = null;
+        boolean calibrate = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--capture") || args[i].equals("--replay") || args[i].equals("--profile")
+                    || args[i].equals("--calibrate") || args[i].equals("--calibration")) {
+                if (i + 1 == args.length) {
+                    printUsage();
+                    return;
+                }
+            }
+            switch (args[i]) {
+                case "--capture" -> captureFile = Path.of(args[++i]);
+                case "--replay" -> replayFile = Path.of(args[++i]);
+                case "--replay-fast" -> replayRealtime = false;
+                case "--profile" -> profileFiles.add(Path.of(args[++i]));
+                case "--calibrate", "--calibration" -> {
+                    if (calibrationFile != null) {
+                        printUsage();
+                        return;
+                    }
+                    calibrate = args[i].equals("--calibrate");
+                    calibrationFile = Path.of(args[++i]);
+                }
+                default -> {
+                    printUsage();
+                    return;
+                }
+            }
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<InputDeviceConfig> profileConfigs = new ArrayList<>();
+        for (Path profileFile : profileFiles) {
+            profileConfigs.add(objectMapper.readValue(profileFile.toFile(), InputDeviceConfig.class));
+        }
+        InputDeviceConfig inputDeviceConfig = profileConfigs.getFirst();
 
         Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown));
+        PipelineMetrics.start();
 
-        keyboard = new Keyboard(new USB(HUNTSMAN_V3_PRO), new HuntsmanV3ProLayout());
-        virtualKeyboard = createVirtualKeyboard(keyboard);
-        InputDevice gamepad = new InputDevice(inputDeviceConfig.getDeviceName(), inputDeviceConfig.getVendorId(), inputDeviceConfig.getProductId());
-        mappingInputDevice = new ConfigurableInputDevice(gamepad, inputDeviceConfig.getInputOutputMapping(), inputDeviceConfig.getDefaultActuationPoint());
-        keyboard.listen(events -> {
+        //-Drazer.backend=hidraw reads /dev/hidrawN instead of claiming the interfaces through libusb
+        String backend = System.getProperty("razer.backend", "usb");
+        if (!backend.equals("usb") && !backend.equals("hidraw")) {
+            throw new IllegalArgumentException("unknown backend (usb or hidraw): " + backend);
+        }
+        boolean hidraw = backend.equals("hidraw");
+        List<? extends BoardReportSource> boards = replayFile != null ? List.of()
+                : hidraw ? HidrawReportSource.findAll(HUNTSMAN_V3_PRO) : USB.findAll(HUNTSMAN_V3_PRO);
+        if (boards.size() > HidFrame.MAX_DEVICES) {
+            System.out.printf("found %d devices; using the first %d%n", boards.size(), HidFrame.MAX_DEVICES);
+            boards = boards.subList(0, HidFrame.MAX_DEVICES);
+        }
+        List<String> deviceIds = new ArrayList<>();
+        List<ReportSource> reportSources = new ArrayList<>();
+        if (replayFile != null) {
+            reportSources.add(new ReplayReportSource(replayFile, replayRealtime));
+        } else if (boards.isEmpty()) {
+            //fails on open with "no device found"
+            reportSources.add(hidraw ? new HidrawReportSource(HUNTSMAN_V3_PRO) : new USB(HUNTSMAN_V3_PRO));
+        } else {
+            boolean reconnect = !"false".equals(System.getProperty("razer.reconnect"));
+            for (BoardReportSource board : boards) {
+                System.out.printf("found device %s%n", board.getDeviceId());
+                deviceIds.add(board.getDeviceId());
+                reportSources.add(reconnect ? new ReconnectingReportSource(board, board.newArrivalMonitor()) : board);
+            }
+        }
+        List<Keyboard> keyboards = new ArrayList<>();
+        for (int i = 0; i < reportSources.size(); i++) {
+            ReportSource reportSource = reportSources.get(i);
+            if (captureFile != null)
+                reportSource = new CapturingReportSource(reportSource, reportSources.size() > 1 ? Path.of(captureFile + "." + i) : captureFile);
+            keyboards.add(new Keyboard(reportSource, new HuntsmanV3ProLayout(), i));
+        }
+        keyboard = keyboards.getFirst();
+        if (calibrationFile != null) {
+            //like captures, every board has its own file when there are several
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < keyboards.size(); i++) {
+                files.add(keyboards.size() > 1 ? Path.of(calibrationFile + "." + i) : calibrationFile);
+            }
+            if (calibrate) {
+                calibrationRecorder = new CalibrationRecorder();
+                calibrationFiles = files;
+                System.out.printf("calibrating: press every key slowly all the way down and let it go; exiting (FN+HOME) saves to %s%n", calibrationFile);
+            } else {
+                for (int i = 0; i < keyboards.size(); i++) {
+                    Keyboard board = keyboards.get(i);
+                    KeyCalibration calibration = new KeyCalibration(objectMapper.readValue(files.get(i).toFile(), CalibrationConfig.class), board.getLayout());
+                    board.setCalibration(calibration);
+                    System.out.printf("%d keys calibrated from %s%n", calibration.size(), files.get(i));
+                }
+            }
+        }
+        ConfigurableInputDevice gamepad = new ConfigurableInputDevice(Main::createGamepad, inputDeviceConfig, keyboard.getLayout(), deviceIds);
+        gamepad.setOutputRate(Integer.getInteger("razer.output.rate", 0));
+        init(createVirtualKeyboard(keyboard), gamepad);
+        profileDevice = gamepad;
+        //every profile is compiled up front, so switching is a reference swap
+        Profile[] compiled = new Profile[profileFiles.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            String name = profileName(profileFiles.get(i));
+            for (int j = 0; j < i; j++) {
+                if (compiled[j].name().equals(name))
+                    throw new IllegalArgumentException("duplicate profile name: " + name);
+            }
+            InputDeviceConfig config = profileConfigs.get(i);
+            compiled[i] = compileProfile(name, config, i == 0 ? gamepad.getMapping() : gamepad.compile(config));
+        }
+        profiles = compiled;
+        gamepad.retain(mappings(compiled));
+        useProfile(compiled[0]);
+        requestedProfile.set(compiled[0]);
+        if (compiled.length > 1)
+            System.out.printf("profiles: %s; %s active%n", profileNames(), compiled[0].name());
+        for (int i = 0; i < profileFiles.size(); i++) {
+            int index = i;
+            ConfigReloader configReloader = new ConfigReloader(profileFiles.get(i), config -> reloadProfile(index, config));
+            configReloader.start();
+        }
+        String controlPath = System.getProperty("razer.control");
+        if (controlPath != null) {
+            controlSocket = new ControlSocket(Path.of(controlPath), Main::onCommand);
+            controlSocket.start();
+        }
+        Keyboard.FrameListener listener = frame -> {
             synchronized (deviceLock) {
+                if (!firstFrameHandled)
+                    onFirstFrame();
+                if (calibrationRecorder != null)
+                    calibrationRecorder.record(frame);
                 if (virtualKeyboard.isOpen())
-                    handleEvent(events);
+                    handleEvent(frame);
             }
-        });
+        };
+        String ringWaitStrategy = System.getProperty("razer.ring.wait");
+        boolean coalesce = Boolean.getBoolean("razer.ring.coalesce");
+        if (keyboards.size() > 1) {
+            keyboardManager = new KeyboardManager(keyboards, SpscRing.WaitStrategy.valueOf(ringWaitStrategy != null ? ringWaitStrategy : "PARK"), coalesce);
+            keyboardManager.listenFrames(listener);
+        } else if (ringWaitStrategy != null) {
+            keyboard.listenFrames(listener, SpscRing.WaitStrategy.valueOf(ringWaitStrategy), coalesce);
+        } else {
+            keyboard.listenFrames(listener);
+        }
         synchronized (deviceLock) {
+            saveCalibration();
             if (virtualKeyboard.isOpen())
                 virtualKeyboard.close();
         }
     }
 
-    private static InputDevice createVirtualKeyboard(Keyboard keyboard) throws IOException {
-        virtualKeyboard = new InputDevice("Razer Keyboard", Constants.VENDOR_RAZER, HUNTSMAN_V3_PRO);
+    //writes what --calibrate recorded, once; under deviceLock
+    private static void saveCalibration() {
+        if (calibrationRecorder == null)
+            return;
+        ObjectWriter writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
+        for (int i = 0; i < calibrationFiles.size(); i++) {
+            CalibrationConfig calibration = calibrationRecorder.toConfig(i, keyboard.getLayout());
+            try {
+                writer.writeValue(calibrationFiles.get(i).toFile(), calibration);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            System.out.printf("%d keys calibrated, saved to %s%n", calibration.getKeys().size(), calibrationFiles.get(i));
+        }
+        calibrationRecorder = null;
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: java -jar <jar-name.jar> <device-config-file-path> [--profile <device-config-file-path>]... [--capture <file>] [--replay <file>] [--replay-fast] [--calibrate <file> | --calibration <file>]");
+    }
+
+    //what a profile switch swaps in, all compiled on the calling thread
+    private record Profile(String name, KeyFilter keyFilter, KeyActuation keyActuation, ChordEngine chordEngine,
+                           ConfigurableInputDevice.Mapping mapping) {
+    }
+
+    private static Profile compileProfile(String name, InputDeviceConfig config, ConfigurableInputDevice.Mapping mapping) {
+        Layout layout = keyboard.getLayout();
+        return new Profile(name, new KeyFilter(config, layout), new KeyActuation(config, layout), new ChordEngine(config, layout, Main::onChord), mapping);
+    }
+
+    private static String profileName(Path profileFile) {
+        String fileName = profileFile.getFileName().toString();
+        return fileName.endsWith(".json") ? fileName.substring(0, fileName.length() - ".json".length()) : fileName;
+    }
+
+    private static List<ConfigurableInputDevice.Mapping> mappings(Profile[] profiles) {
+        List<ConfigurableInputDevice.Mapping> mappings = new ArrayList<>();
+        for (Profile profile : profiles) {
+            mappings.add(profile.mapping());
+        }
+        return mappings;
+    }
+
+    private static String profileNames() {
+        List<String> names = new ArrayList<>();
+        for (Profile profile : profiles) {
+            names.add(profile.name());
+        }
+        return String.join(", ", names);
+    }
+
+    //config-reloader threads: recompiles the profile; if it is the active (or requested) one its mapping is swapped
+    //before the next report (see reloadActiveProfile), otherwise the next switch to it picks up the new revision
+    private static synchronized void reloadProfile(int index, InputDeviceConfig config) throws IOException {
+        Profile[] current = profiles;
+        Profile reloaded = compileProfile(current[index].name(), config, profileDevice.compile(config));
+        Profile[] next = current.clone();
+        next[index] = reloaded;
+        profiles = next;
+        profileDevice.retain(mappings(next));
+        if (requestedProfile.compareAndSet(current[index], reloaded))
+            System.out.printf("profile %s reloaded%n", reloaded.name());
+    }
+
+    //requests a switch by name, or relative to the requested profile
+    private static Profile requestProfile(String name, int offset) {
+        Profile[] profiles = Main.profiles;
+        if (profiles.length == 0)
+            throw new IllegalStateException("no profiles");
+        Profile target = null;
+        if (name != null) {
+            for (Profile profile : profiles) {
+                if (profile.name().equals(name))
+                    target = profile;
+            }
+            if (target == null)
+                throw new IllegalArgumentException("unknown profile: " + name);
+        } else {
+            int index = List.of(profiles).indexOf(requestedProfile.get());
+            target = profiles[Math.floorMod(index + offset, profiles.length)];
+        }
+        requestedProfile.set(target);
+        return target;
+    }
+
+    //control-socket thread
+    private static String onCommand(String command) {
+        String[] parts = command.split("\\s+", 2);
+        return switch (parts[0]) {
+            case "profile" -> {
+                if (parts.length < 2)
+                    throw new IllegalArgumentException("usage: profile <name>");
+                yield "switching to " + requestProfile(parts[1], 0).name();
+            }
+            case "next" -> "switching to " + requestProfile(null, 1).name();
+            case "previous" -> "switching to " + requestProfile(null, -1).name();
+            case "profiles" -> profileNames() + "; " + requestedProfile.get().name() + " active";
+            default -> throw new IllegalArgumentException("unknown command: " + parts[0] + " (profile <name>, next, previous, profiles)");
+        };
+    }
+
+    //startup time as seen by the user: process start (falls back to jvm start) until the first report is handled.
+    //-Drazer.startup.exit=true stops after it, for the startup benchmark
+    private static void onFirstFrame() {
+        firstFrameHandled = true;
+        long start = ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli).orElse(ManagementFactory.getRuntimeMXBean().getStartTime());
+        System.out.printf("first report after %d ms%n", System.currentTimeMillis() - start);
+        if (Boolean.getBoolean("razer.startup.exit")) {
+            if (keyboardManager != null) keyboardManager.closeAll();
+            else keyboard.closeIfOpen();
+        }
+    }
+
+    private static EventSink createGamepad(InputDeviceConfig.OutputDeviceConfig outputDevice) {
+        if (noOutput)
+            return new NullEventSink();
+        return new UInputDevice(outputDevice.getDeviceName(), outputDevice.getVendorId(), outputDevice.getProductId());
+    }
+
+    private static EventSink createVirtualKeyboard(Keyboard keyboard) throws IOException {
+        EventSink virtualKeyboard = noOutput ? new NullEventSink() : new UInputDevice("Razer Keyboard", Constants.VENDOR_RAZER, HUNTSMAN_V3_PRO);
         virtualKeyboard.addCapability(keyboard.getCapabilities().toArray(new EventCode[0]));
         virtualKeyboard.open();
         return virtualKeyboard;
     }
 
-    public static void handleEvent(List<InputDevice.Event> events) {
-        boolean handled = enableDisableJoystickKeyComboCheck(events);
-        if (handled) {
-            return;
+    //sets the devices handleEvent writes to; the keyboard sink is expected to be open already
+    public static void init(EventSink keyboardSink, GenericDevice gamepadDevice) {
+        synchronized (deviceLock) {
+            virtualKeyboard = keyboardSink;
+            mappingInputDevice = gamepadDevice;
+        }
+    }
+
+    //filter applied to every frame before it is handled; fresh filter state, so pressed keys restart unfiltered
+    public static void setKeyFilter(KeyFilter filter) {
+        keyFilter = filter != null && filter.isEnabled() ? filter : null;
+    }
+
+    //actuation/rapid trigger for keys written to the virtual keyboard; fresh state, so a held key stays pressed
+    //only while it is past its new actuation point
+    public static void setKeyActuation(KeyActuation actuation) {
+        keyActuation = actuation;
+    }
+
+    //chords are matched after the key filter and before mapping; fresh state, so held chords fire again unless the
+    //engine is primed (see switchProfile)
+    public static void setChordEngine(ChordEngine engine) {
+        chordEngine = engine;
+    }
+
+    public static void setJoystickEnabled(boolean enabled) {
+        synchronized (deviceLock) {
+            joystickEnabled = enabled;
+        }
+    }
+
+    public static void handleEvent(HidFrame frame) {
+        Profile requested = requestedProfile.get();
+        boolean switched = requested != activeProfile;
+        if (switched) {
+            if (requested.name().equals(activeProfile.name()))
+                reloadActiveProfile(requested);
+            else
+                switchProfile(requested);
+        }
+        KeyFilter filter = keyFilter;
+        if (filter != null)
+            filter.apply(frame);
+        ChordEngine chords = chordEngine;
+        if (chords != null) {
+            long start = PipelineMetrics.ENABLED ? System.nanoTime() : 0;
+            if (switched)
+                chords.prime(frame); //the chord that switched is most likely still held; on a reload, any held chord
+            else
+                chords.apply(frame);
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.record(PipelineMetrics.Stage.COMBO, start);
         }
 
         if (joystickEnabled) {
@@ -75,70 +415,127 @@ public class Main {
                     throw new RuntimeException(e);
                 }
             }
-            Map<Boolean, List<InputDevice.Event>> collect = events.stream().collect(Collectors.partitioningBy(o -> mappingInputDevice.canHandle(o.getCode())));
-            List<InputDevice.Event> keyboardEvents = collect.get(Boolean.FALSE);
-            List<InputDevice.Event> gamepadEvents = collect.get(Boolean.TRUE);
-            mappingInputDevice.handle(gamepadEvents);
-            keyboardHandle(keyboardEvents);
+            mappingInputDevice.handle(frame);
+            for (int i = 0; i < frame.size(); i++) {
+                if (!mappingInputDevice.canHandle(frame.getKey(i)))
+                    keyboardHandle(frame, i);
+            }
         } else {
-            keyboardHandle(events);
+            for (int i = 0; i < frame.size(); i++) {
+                keyboardHandle(frame, i);
+            }
+        }
+        try {
+            virtualKeyboard.syn();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    private static void keyboardHandle(List<InputDevice.Event> keyboardEvents) {
-        keyboardEvents.stream().map(event -> {
-            int value = event.getValue();
-            value = value > Short.MAX_VALUE ? 1 : 0;
-            return new InputDevice.Event(event.getCode(), value);
-        }).forEach(event -> {
-            try {
-                virtualKeyboard.emit(event);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    //between two reports: releases the virtual keyboard keys, which the new profile may map to the gamepad or actuate
+    //differently, and hands its mapping to the gamepad, which releases the outputs the old one held
+    private static void switchProfile(Profile profile) {
+        EventCode[] eventCodeMap = keyboard.getLayout().getEventCodeMap();
+        try {
+            for (int key = 0; key < HidFrame.KEY_CODES * HidFrame.MAX_DEVICES; key++) {
+                if (keyStates.get(key) == 1 && keyStates.update(key, 0))
+                    virtualKeyboard.queue(eventCodeMap[key % HidFrame.KEY_CODES], 0);
             }
-        });
+            useProfile(profile);
+            profileDevice.activate(profile.mapping());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.printf("profile %s active%n", profile.name());
     }
 
-    private static boolean enableDisableJoystickKeyComboCheck(List<InputDevice.Event> events) {
-        boolean handled = false;
-        if (events.size() == 2) {
-            InputDevice.Event event = events.get(0);
-            InputDevice.Event event1 = events.get(1);
-            EventCode eventCode = event.getCode();
-            EventCode eventCode1 = event1.getCode();
-            int value = event.getValue();
-            int value1 = event1.getValue();
-
-            if (eventCode.equals(EventCode.KEY_FN) && eventCode1.equals(EventCode.KEY_PAGEDOWN)) {
-                if (value > Short.MAX_VALUE && value1 > Short.MAX_VALUE) {
-                    if (joystickEnabled) {
-                        joystickEnabled = false;
-                        System.out.println("joystick disabled");
-                    }
-                    handled = true;
+    //between two reports: the active profile's file was saved. only the mapping is swapped; held keys stay held and
+    //the filter and actuation state carries over, so no input is dropped. keys the new mapping takes over for the
+    //gamepad are released on the virtual keyboard
+    private static void reloadActiveProfile(Profile profile) {
+        EventCode[] eventCodeMap = keyboard.getLayout().getEventCodeMap();
+        profile.keyFilter().carryOver(activeProfile.keyFilter());
+        profile.keyActuation().carryOver(activeProfile.keyActuation());
+        try {
+            if (joystickEnabled) {
+                for (int key = 0; key < HidFrame.KEY_CODES * HidFrame.MAX_DEVICES; key++) {
+                    if (keyStates.get(key) == 1 && profile.mapping().isMapped(key) && keyStates.update(key, 0))
+                        virtualKeyboard.queue(eventCodeMap[key % HidFrame.KEY_CODES], 0);
                 }
-            } else if (eventCode.equals(EventCode.KEY_FN) && eventCode1.equals(EventCode.KEY_PAGEUP)) {
-                if (value > Short.MAX_VALUE && value1 > Short.MAX_VALUE) {
-                    if (!joystickEnabled) {
-                        joystickEnabled = true;
-                        System.out.println("joystick enabled");
-                    }
-                    handled = true;
+            }
+            useProfile(profile);
+            profileDevice.activate(profile.mapping());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void useProfile(Profile profile) {
+        activeProfile = profile;
+        setKeyFilter(profile.keyFilter());
+        setKeyActuation(profile.keyActuation());
+        setChordEngine(profile.chordEngine());
+    }
+
+    private static void keyboardHandle(HidFrame frame, int index) {
+        KeyActuation actuation = keyActuation;
+        int value = actuation != null ? actuation.update(frame, index) : frame.getValue(index) > Short.MAX_VALUE ? 1 : 0;
+        if (!keyStates.update(frame.getKey(index), value))
+            return;
+        try {
+            virtualKeyboard.queue(frame.getEventCode(index), value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //runs on the thread handling frames, under deviceLock
+    private static void onChord(InputDeviceConfig.ChordBinding binding) {
+        switch (binding.getAction()) {
+            case ENABLE_JOYSTICK -> joystick(true);
+            case DISABLE_JOYSTICK -> joystick(false);
+            case TOGGLE_JOYSTICK -> joystick(!joystickEnabled);
+            case TERMINATE -> {
+                System.out.println("terminating");
+                //ends the read loops; the frame being handled is still written
+                if (keyboardManager != null) keyboardManager.closeAll();
+                else if (keyboard != null) keyboard.closeIfOpen();
+            }
+            case NEXT_PROFILE, PREVIOUS_PROFILE, PROFILE -> {
+                try {
+                    requestProfile(binding.getProfile(), binding.getAction() == InputDeviceConfig.ChordAction.PREVIOUS_PROFILE ? -1 : 1);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    System.err.printf("chord %s ignored: %s%n", binding.getKeys(), e.getMessage());
                 }
             }
         }
-        return handled;
+    }
+
+    private static void joystick(boolean enabled) {
+        if (joystickEnabled != enabled) {
+            joystickEnabled = enabled;
+            System.out.println(enabled ? "joystick enabled" : "joystick disabled");
+        }
     }
 
     private static void shutdown() {
         try {
+            if (controlSocket != null)
+                controlSocket.close();
             synchronized (deviceLock) {
-                if (keyboard != null) keyboard.closeIfOpen();
+                saveCalibration();
+                if (keyboardManager != null) keyboardManager.closeAll();
+                else if (keyboard != null) keyboard.closeIfOpen();
                 if (mappingInputDevice != null && mappingInputDevice.isOpen())
                     mappingInputDevice.close();
                 if (virtualKeyboard != null && virtualKeyboard.isOpen())
                     virtualKeyboard.close();
             }
+            System.out.printf("keyboard events: %s%n", keyStates);
+            if (mappingInputDevice != null)
+                System.out.printf("gamepad events: %s%n", mappingInputDevice.getOutputStates());
+            if (PipelineMetrics.ENABLED)
+                System.out.print(PipelineMetrics.getInstance().dump());
         } catch (Exception e) {
             //ignored
             e.printStackTrace();
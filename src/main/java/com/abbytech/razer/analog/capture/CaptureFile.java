@@ -0,0 +1,21 @@
+package com.abbytech.razer.analog.capture;
+
+import com.abbytech.razer.analog.protocol.Constants;
+
+//capture file layout: 16 byte header (magic, version, report length, reserved) followed by fixed size records of
+//an 8 byte System.nanoTime() stamp and the raw report, zero padded to HID_DATA_LENGTH
+final class CaptureFile {
+    static final int MAGIC = 0x525a4350; //"RZCP"
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 16;
+    static final int REPORT_LENGTH = Constants.HID_DATA_LENGTH;
+    static final int RECORD_LENGTH = Long.BYTES + REPORT_LENGTH;
+    static final int CHUNK_RECORDS = 1 << 16; //records per mapped window (~3.5MB)
+
+    private CaptureFile() {
+    }
+
+    static long recordOffset(long record) {
+        return HEADER_LENGTH + record * RECORD_LENGTH;
+    }
+}
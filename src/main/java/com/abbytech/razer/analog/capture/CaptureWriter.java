@@ -0,0 +1,95 @@
+package com.abbytech.razer.analog.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.abbytech.razer.analog.capture.CaptureFile.*;
+import static java.nio.file.StandardOpenOption.*;
+
+//memory mapped append log; appending is a couple of stores into the mapped window. the next window is mapped (and
+//the file grown) ahead on a thread of its own, so a full window is replaced without a syscall on the appending thread.
+//pages are written back by the kernel; the file is only forced on close
+public class CaptureWriter implements Closeable {
+    private final FileChannel channel;
+    private final ExecutorService mapper = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "capture-mapper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private MappedByteBuffer window;
+    private Future<MappedByteBuffer> next; //the window after this one
+    private long windowStart;
+    private long records;
+
+    public CaptureWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).putInt(REPORT_LENGTH).putInt(0).flip();
+        channel.write(header, 0);
+        window = map(0);
+        mapNext();
+    }
+
+    public void append(long timestamp, ByteBuffer report) {
+        if (records - windowStart == CHUNK_RECORDS) {
+            window = awaitNext();
+            windowStart = records;
+            mapNext();
+        }
+        int offset = (int) (records - windowStart) * RECORD_LENGTH;
+        window.putLong(offset, timestamp);
+        window.put(offset + Long.BYTES, report, report.position(), Math.min(report.remaining(), REPORT_LENGTH));
+        records++;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    private MappedByteBuffer map(long firstRecord) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, recordOffset(firstRecord), (long) CHUNK_RECORDS * RECORD_LENGTH);
+    }
+
+    private void mapNext() {
+        long firstRecord = windowStart + CHUNK_RECORDS;
+        next = mapper.submit(() -> map(firstRecord));
+    }
+
+    //normally mapped long before the window filled up
+    private MappedByteBuffer awaitNext() {
+        try {
+            return next.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? new UncheckedIOException(cause) : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    //trims the preallocated tail, including the window mapped ahead, and flushes everything written
+    @Override
+    public void close() throws IOException {
+        try {
+            next.get();
+        } catch (ExecutionException e) {
+            //the window mapped ahead was never written to
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mapper.shutdown();
+        window = null;
+        channel.truncate(recordOffset(records));
+        channel.force(true);
+        channel.close();
+    }
+}
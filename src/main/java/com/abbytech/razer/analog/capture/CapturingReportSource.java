@@ -0,0 +1,73 @@
+package com.abbytech.razer.analog.capture;
+
+import com.abbytech.razer.analog.protocol.ReportSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+//records every report read from the wrapped source, with the time it was read, to a capture file
+public class CapturingReportSource implements ReportSource {
+    private final ReportSource source;
+    private final Path path;
+    private CaptureWriter writer;
+
+    public CapturingReportSource(ReportSource source, Path path) {
+        this.source = source;
+        this.path = path;
+    }
+
+    @Override
+    public void openDevice() {
+        synchronized (this) {
+            try {
+                writer = new CaptureWriter(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        source.openDevice();
+        System.out.printf("capturing reports to %s%n", path);
+    }
+
+    @Override
+    public void closeDevice() {
+        try {
+            source.closeDevice();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    @Override
+    public boolean isDeviceOpen() {
+        return source.isDeviceOpen();
+    }
+
+    @Override
+    public ByteBuffer readHIDData() {
+        ByteBuffer report = source.readHIDData();
+        if (report != null)
+            append(System.nanoTime(), report);
+        return report;
+    }
+
+    //uncontended except while closing; keeps a late report from touching an unmapped window
+    private synchronized void append(long timestamp, ByteBuffer report) {
+        if (writer != null)
+            writer.append(timestamp, report);
+    }
+
+    private synchronized void closeWriter() {
+        if (writer == null)
+            return;
+        try {
+            System.out.printf("captured %d reports%n", writer.getRecords());
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.abbytech.razer.analog.capture;
+
+import com.abbytech.razer.analog.protocol.ReportSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.abbytech.razer.analog.capture.CaptureFile.*;
+
+//feeds the reports of a capture file back, either spaced by their recorded timestamps or as fast as they are read
+public class ReplayReportSource implements ReportSource {
+    private static final long SPIN_NANOS = 50_000;
+    private final Path path;
+    private final boolean realtime;
+    private final ByteBuffer report = ByteBuffer.allocate(REPORT_LENGTH);
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowRecords;
+    private long records;
+    private long next;
+    private long firstTimestamp;
+    private long startTime;
+    private volatile boolean open;
+
+    public ReplayReportSource(Path path, boolean realtime) {
+        this.path = path;
+        this.realtime = realtime;
+    }
+
+    @Override
+    public void openDevice() {
+        if (open) {
+            throw new IllegalStateException("replay already open");
+        }
+        try {
+            channel = FileChannel.open(path);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != REPORT_LENGTH) {
+                throw new IOException("not a report capture: " + path);
+            }
+            records = Math.max(0, (channel.size() - HEADER_LENGTH) / RECORD_LENGTH);
+            map(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        next = 0;
+        open = true;
+        System.out.printf("replaying %d reports from %s%s%n", records, path, realtime ? "" : " (as fast as possible)");
+    }
+
+    @Override
+    public void closeDevice() {
+        open = false;
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isDeviceOpen() {
+        return open;
+    }
+
+    @Override
+    public ByteBuffer readHIDData() {
+        if (!open || next >= records) {
+            open = false;
+            return null;
+        }
+        if (next - windowStart == windowRecords) {
+            try {
+                map(next);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int offset = (int) (next - windowStart) * RECORD_LENGTH;
+        long timestamp = window.getLong(offset);
+        if (window.get(offset + Long.BYTES) == 0) {
+            //zeroed tail of a capture that was not closed cleanly
+            open = false;
+            return null;
+        }
+        if (realtime)
+            awaitOriginalTime(timestamp);
+        report.clear();
+        report.put(0, window, offset + Long.BYTES, REPORT_LENGTH);
+        next++;
+        return report;
+    }
+
+    private void awaitOriginalTime(long timestamp) {
+        if (next == 0) {
+            firstTimestamp = timestamp;
+            startTime = System.nanoTime();
+            return;
+        }
+        long due = startTime + (timestamp - firstTimestamp);
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS)
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            else
+                Thread.onSpinWait();
+        }
+    }
+
+    private void map(long firstRecord) throws IOException {
+        windowStart = firstRecord;
+        windowRecords = Math.min(CHUNK_RECORDS, records - firstRecord);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, recordOffset(firstRecord), windowRecords * RECORD_LENGTH);
+    }
+}
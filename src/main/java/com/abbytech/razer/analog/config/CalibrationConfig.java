@@ -0,0 +1,18 @@
+package com.abbytech.razer.analog.config;
+
+import lombok.Data;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+//travel range of every calibrated key of one board, as recorded by --calibrate
+@Data
+public class CalibrationConfig {
+    private Map<EventCode, KeyRange> keys;
+
+    @Data
+    public static class KeyRange {
+        private int rest; //raw travel reported as the key starts to move; read as 0
+        private int bottom; //raw travel at bottom-out; read as 65535
+    }
+}
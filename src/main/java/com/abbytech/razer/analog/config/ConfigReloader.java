@@ -0,0 +1,91 @@
+package com.abbytech.razer.analog.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//watches the config file and passes every successfully parsed revision to the listener on its own thread,
+//so parsing and compiling never run on the report path. invalid revisions are reported and skipped
+public class ConfigReloader implements AutoCloseable {
+    private static final long SETTLE_MILLIS = 100; //editors often save in several writes/renames
+
+    private final Path configFile;
+    private final ReloadListener listener;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WatchService watchService;
+    private final Thread thread;
+    private byte[] lastContent;
+
+    public ConfigReloader(Path configFile, ReloadListener listener) throws IOException {
+        this.configFile = configFile.toAbsolutePath();
+        this.listener = listener;
+        this.lastContent = Files.readAllBytes(this.configFile);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.configFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "config-reloader");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollChanged(key);
+                //wait until the file stopped changing before reading it
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= pollChanged(key);
+                }
+                if (changed)
+                    reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+
+    private boolean pollChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || configFile.getFileName().equals(event.context()))
+                changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            byte[] content = Files.readAllBytes(configFile);
+            if (Arrays.equals(content, lastContent))
+                return;
+            InputDeviceConfig config = objectMapper.readValue(content, InputDeviceConfig.class);
+            listener.onReload(config);
+            lastContent = content;
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("config %s not reloaded: %s%n", configFile, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    public interface ReloadListener {
+        void onReload(InputDeviceConfig config) throws IOException;
+    }
+}
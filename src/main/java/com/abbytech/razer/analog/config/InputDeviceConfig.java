@@ -11,13 +11,97 @@ public class InputDeviceConfig {
     private String deviceName;
     private short vendorId;
     private short productId;
+    private List<OutputDeviceConfig> outputDevices; //further virtual devices next to the one above, e.g. a second player's gamepad
     private Map<EventCode, List<OutputMapping>> inputOutputMapping;
+    private Map<String, Map<EventCode, List<OutputMapping>>> deviceInputOutputMapping; //per board overrides keyed by device id (bus-port path); boards without an entry use inputOutputMapping
     private int defaultActuationPoint; //value between 0-65535; used to determine when a button is considered to be pressed(down).
+    private int minAxisDelta; //axis changes smaller than this are not written to the virtual device; 0 writes every change
+    private KeyFilterConfig defaultKeyFilter; //noise filter for keys without an entry in keyFilters; none when absent
+    private Map<EventCode, KeyFilterConfig> keyFilters;
+    private KeyActuationConfig defaultKeyActuation; //virtual keyboard actuation for keys without an entry in keyActuations; halfway when absent
+    private Map<EventCode, KeyActuationConfig> keyActuations;
+    private List<ChordBinding> chords; //key combinations handled before mapping; FN+PAGEUP/PAGEDOWN/HOME when absent
 
     @Data
     public static class OutputMapping {
         private EventCode eventCode;
         private boolean positive;//used to determine button axis direction (e.g. left or right) in-case event code is an axis
         private int actuationPoint; //value between 0-65535; used to determine when a button is considered to be pressed(down)
+        private int innerDeadzone; //axes and REL_ outputs; travel (0-65535) from the top that still counts as released
+        private int outerDeadzone; //axes and REL_ outputs; travel (0-65535) before the bottom that already counts as fully pressed
+        private Curve curve; //axes and REL_ outputs; response between the deadzones, linear when absent
+        private double speed; //REL_ outputs: counts per second at full travel; 1000 (REL_WHEEL/REL_HWHEEL: 10) when 0
+        private String device; //id of one of outputDevices; the device described by deviceName/vendorId/productId when absent
+    }
+
+    @Data
+    public static class OutputDeviceConfig {
+        private String id; //referenced by OutputMapping.device
+        private String deviceName;
+        private short vendorId;
+        private short productId;
+    }
+
+    @Data
+    public static class Curve {
+        private CurveType type;
+        private double exponent; //EXPONENTIAL: output = input^exponent, S_CURVE: steepness around the midpoint; 2 when 0
+        private List<List<Double>> points; //POINTS: [input, output] pairs between 0 and 1, joined linearly
+    }
+
+    //travel noise filter applied to a key before it is mapped; 0 (released) always passes straight through
+    @Data
+    public static class KeyFilterConfig {
+        private KeyFilterType type;
+        private double alpha; //EMA: weight of the newest value, 0-1; 0.5 when 0
+        private int snap; //EMA: changes at least this large skip the average; 2048 when 0
+        private double minCutoff; //ONE_EURO: cutoff frequency (Hz) at rest; 1 when 0
+        private double beta; //ONE_EURO: cutoff increase per unit/s of travel speed; 0.001 when 0
+        private double derivativeCutoff; //ONE_EURO: cutoff frequency (Hz) of the speed estimate; 1 when 0
+        private int band; //HYSTERESIS: changes smaller than this are dropped; 64 when 0
+    }
+
+    //when a key passed to the virtual keyboard counts as pressed; travel values are 0-65535
+    @Data
+    public static class KeyActuationConfig {
+        private int actuationPoint; //travel past which a released key presses; 32767 (halfway) when 0
+        private int resetPoint; //travel at or below which the key releases and rapid trigger ends; the actuation point when 0
+        private boolean rapidTrigger; //past the reset point, release and press again on every change of direction
+        private int pressSensitivity; //rapid trigger: travel down from the highest point that presses again; 1638 when 0
+        private int releaseSensitivity; //rapid trigger: travel up from the lowest point that releases; 1638 when 0
+    }
+
+    //fires once when all keys are pressed past the actuation point, other held keys do not matter. the keys are
+    //consumed: they read as released to the mapping and the virtual keyboard until they are let go
+    @Data
+    public static class ChordBinding {
+        private List<EventCode> keys;
+        private ChordAction action;
+        private int actuationPoint; //value between 0-65535; 32767 (halfway) when 0
+        private String profile; //PROFILE only: name of the profile to switch to
+    }
+
+    public enum ChordAction {
+        ENABLE_JOYSTICK,
+        DISABLE_JOYSTICK,
+        TOGGLE_JOYSTICK,
+        TERMINATE,
+        NEXT_PROFILE,
+        PREVIOUS_PROFILE,
+        PROFILE
+    }
+
+    public enum KeyFilterType {
+        NONE,
+        EMA,
+        ONE_EURO,
+        HYSTERESIS
+    }
+
+    public enum CurveType {
+        LINEAR,
+        EXPONENTIAL,
+        S_CURVE,
+        POINTS
     }
 }
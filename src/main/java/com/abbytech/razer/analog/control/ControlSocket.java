@@ -0,0 +1,108 @@
+package com.abbytech.razer.analog.control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+//line based commands on a unix domain socket, only accessible to the owner, e.g.
+//echo "profile flight" | socat - UNIX-CONNECT:<path>. clients are served one at a time on a single thread, every
+//command gets one reply line
+public class ControlSocket implements AutoCloseable {
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+
+    private final Path path;
+    private final CommandHandler handler;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+
+    public ControlSocket(Path path, CommandHandler handler) throws IOException {
+        this.path = path.toAbsolutePath();
+        this.handler = handler;
+        //a socket there was left behind by a run that did not exit cleanly and is replaced below; anything else is not ours
+        if (Files.exists(this.path, LinkOption.NOFOLLOW_LINKS) && !isSocket(this.path)) {
+            throw new IOException("not a socket: " + this.path);
+        }
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bind();
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        this.thread = new Thread(this::serve, "control-socket");
+        this.thread.setDaemon(true);
+    }
+
+    //binds in a directory only the owner can enter and restricts the socket there, then renames it into place, so
+    //it is never reachable by others, not even between bind and chmod
+    private void bind() throws IOException {
+        Path directory = Files.createTempDirectory(path.getParent(), ".control", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path socket = directory.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            Files.move(socket, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(directory);
+        }
+    }
+
+    private static boolean isSocket(Path path) throws IOException {
+        return ((int) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS) & S_IFMT) == S_IFSOCK;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void serve() {
+        while (true) {
+            try (SocketChannel client = server.accept();
+                 BufferedReader reader = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+                 Writer writer = Channels.newWriter(client, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String command = line.strip();
+                    if (command.isEmpty())
+                        continue;
+                    String reply;
+                    try {
+                        reply = handler.handle(command);
+                    } catch (RuntimeException e) {
+                        reply = "error: " + e.getMessage();
+                    }
+                    writer.write(reply + "\n");
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                if (!server.isOpen())
+                    return; //closed
+                System.err.printf("control connection failed: %s%n", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(path);
+    }
+
+    public interface CommandHandler {
+        //returns the reply; a RuntimeException is replied as an error
+        String handle(String command);
+    }
+}
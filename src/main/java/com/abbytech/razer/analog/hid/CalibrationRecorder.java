@@ -0,0 +1,50 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.CalibrationConfig;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+//records the lowest and highest raw travel every key reports, by device namespaced key (HidFrame.getKey), for
+//--calibrate: the lowest is where the key starts to move, the highest its bottom-out. fed uncalibrated frames
+public class CalibrationRecorder {
+    private final int[] lowest = new int[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final int[] highest = new int[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES]; //0 until the key is reported moving
+
+    public void record(HidFrame frame) {
+        for (int i = 0; i < frame.size(); i++) {
+            int value = frame.getValue(i);
+            if (value == 0)
+                continue;
+            int key = frame.getKey(i);
+            if (highest[key] == 0 || value < lowest[key])
+                lowest[key] = value;
+            if (value > highest[key])
+                highest[key] = value;
+        }
+    }
+
+    //the recorded ranges of one board; keys that did not move far enough are left out and listed
+    public CalibrationConfig toConfig(int device, Layout layout) {
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        Map<EventCode, CalibrationConfig.KeyRange> keys = new EnumMap<>(EventCode.class);
+        for (int keyCode = 0; keyCode < eventCodeMap.length && keyCode < HidFrame.KEY_CODES; keyCode++) {
+            int key = device * HidFrame.KEY_CODES + keyCode;
+            if (highest[key] == 0 || eventCodeMap[keyCode] == EventCode.KEY_RESERVED)
+                continue;
+            if (highest[key] - lowest[key] < KeyCalibration.MIN_RANGE) {
+                System.out.printf("%s not calibrated: travel %d-%d, press it all the way down%n", eventCodeMap[keyCode], lowest[key], highest[key]);
+                continue;
+            }
+            CalibrationConfig.KeyRange range = new CalibrationConfig.KeyRange();
+            range.setRest(lowest[key]);
+            range.setBottom(highest[key]);
+            keys.put(eventCodeMap[keyCode], range);
+        }
+        CalibrationConfig config = new CalibrationConfig();
+        config.setKeys(keys);
+        return config;
+    }
+}
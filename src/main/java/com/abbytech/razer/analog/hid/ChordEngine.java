@@ -0,0 +1,145 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//matches key chords against a 256 bit pressed set per board, so a chord is a few long compares per binding no matter
+//which other keys are held. there is one pressed set per distinct actuation point, rebuilt from every frame. bindings
+//fire on the frame they start matching; their keys are then zeroed in the frame until released
+public class ChordEngine {
+    private static final int WORDS = HidFrame.KEY_CODES / Long.SIZE;
+
+    private final InputDeviceConfig.ChordBinding[] bindings;
+    private final long[] masks; //WORDS per binding
+    private final int[] levels; //pressed set per binding
+    private final int[] thresholds; //per level; level 0 is any travel, for consumed keys
+    private final ChordListener listener;
+
+    private final long[] pressed; //WORDS per level per device
+    private final long[] consumed = new long[WORDS * HidFrame.MAX_DEVICES];
+    private final boolean[] active; //per binding per device
+
+    public ChordEngine(InputDeviceConfig config, Layout layout, ChordListener listener) {
+        List<InputDeviceConfig.ChordBinding> bindings = config.getChords() != null ? config.getChords() : defaultChords();
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        this.listener = listener;
+        this.bindings = bindings.toArray(new InputDeviceConfig.ChordBinding[0]);
+        this.masks = new long[bindings.size() * WORDS];
+        this.levels = new int[bindings.size()];
+        List<Integer> thresholds = new ArrayList<>(List.of(0));
+        for (int b = 0; b < bindings.size(); b++) {
+            InputDeviceConfig.ChordBinding binding = bindings.get(b);
+            int actuationPoint = binding.getActuationPoint() != 0 ? binding.getActuationPoint() : Short.MAX_VALUE;
+            if (binding.getAction() == null || binding.getKeys() == null || binding.getKeys().isEmpty() || actuationPoint < 0 || actuationPoint > 0xFFFF
+                    || (binding.getAction() == InputDeviceConfig.ChordAction.PROFILE) != (binding.getProfile() != null)) {
+                throw new IllegalArgumentException("invalid chord: " + binding);
+            }
+            for (EventCode eventCode : binding.getKeys()) {
+                int keyCode = indexOf(eventCodeMap, eventCode);
+                if (keyCode < 0 || keyCode >= HidFrame.KEY_CODES) {
+                    throw new IllegalArgumentException("chord key not on the keyboard: " + eventCode);
+                }
+                masks[b * WORDS + (keyCode >>> 6)] |= 1L << keyCode;
+            }
+            if (!thresholds.contains(actuationPoint))
+                thresholds.add(actuationPoint);
+            levels[b] = thresholds.indexOf(actuationPoint);
+        }
+        this.thresholds = thresholds.stream().mapToInt(Integer::intValue).toArray();
+        this.pressed = new long[this.thresholds.length * WORDS * HidFrame.MAX_DEVICES];
+        this.active = new boolean[bindings.size() * HidFrame.MAX_DEVICES];
+    }
+
+    private static List<InputDeviceConfig.ChordBinding> defaultChords() {
+        return List.of(
+                chord(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK, EventCode.KEY_FN, EventCode.KEY_PAGEUP),
+                chord(InputDeviceConfig.ChordAction.DISABLE_JOYSTICK, EventCode.KEY_FN, EventCode.KEY_PAGEDOWN),
+                chord(InputDeviceConfig.ChordAction.TERMINATE, EventCode.KEY_FN, EventCode.KEY_HOME));
+    }
+
+    private static InputDeviceConfig.ChordBinding chord(InputDeviceConfig.ChordAction action, EventCode... keys) {
+        InputDeviceConfig.ChordBinding binding = new InputDeviceConfig.ChordBinding();
+        binding.setAction(action);
+        binding.setKeys(List.of(keys));
+        return binding;
+    }
+
+    private static int indexOf(EventCode[] eventCodeMap, EventCode eventCode) {
+        for (int i = 0; i < eventCodeMap.length; i++) {
+            if (eventCodeMap[i] == eventCode)
+                return i;
+        }
+        return -1;
+    }
+
+    //updates the pressed sets of the frame's board, fires bindings that started matching and zeroes consumed keys
+    public void apply(HidFrame frame) {
+        apply(frame, true);
+    }
+
+    //apply() without firing: chords already held when this engine takes over (e.g. the one that switched profiles)
+    //become active and consumed, and fire again only after being let go
+    public void prime(HidFrame frame) {
+        apply(frame, false);
+    }
+
+    private void apply(HidFrame frame, boolean fire) {
+        int device = frame.getDevice();
+        int levelCount = thresholds.length;
+        int base = device * levelCount * WORDS;
+        Arrays.fill(pressed, base, base + levelCount * WORDS, 0L);
+        for (int i = 0; i < frame.size(); i++) {
+            int keyCode = frame.getKeyCode(i);
+            int value = frame.getValue(i);
+            long bit = 1L << keyCode;
+            int word = keyCode >>> 6;
+            for (int level = 0; level < levelCount; level++) {
+                if (value > thresholds[level])
+                    pressed[base + level * WORDS + word] |= bit;
+            }
+        }
+        int consumedBase = device * WORDS;
+        for (int b = 0; b < bindings.length; b++) {
+            boolean match = matches(base + levels[b] * WORDS, b * WORDS);
+            int state = device * bindings.length + b;
+            if (match && !active[state]) {
+                for (int w = 0; w < WORDS; w++) {
+                    consumed[consumedBase + w] |= masks[b * WORDS + w];
+                }
+                if (fire)
+                    listener.onChord(bindings[b]);
+            }
+            active[state] = match;
+        }
+        boolean anyConsumed = false;
+        for (int w = 0; w < WORDS; w++) {
+            consumed[consumedBase + w] &= pressed[base + w];
+            anyConsumed |= consumed[consumedBase + w] != 0;
+        }
+        if (!anyConsumed)
+            return;
+        for (int i = 0; i < frame.size(); i++) {
+            int keyCode = frame.getKeyCode(i);
+            if ((consumed[consumedBase + (keyCode >>> 6)] & (1L << keyCode)) != 0)
+                frame.setValue(i, 0);
+        }
+    }
+
+    private boolean matches(int pressedOffset, int maskOffset) {
+        for (int w = 0; w < WORDS; w++) {
+            long mask = masks[maskOffset + w];
+            if ((pressed[pressedOffset + w] & mask) != mask)
+                return false;
+        }
+        return true;
+    }
+
+    public interface ChordListener {
+        void onChord(InputDeviceConfig.ChordBinding binding);
+    }
+}
@@ -1,74 +1,65 @@
 package com.abbytech.razer.analog.hid;
 
 import com.abbytech.razer.analog.layout.Layout;
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
 import com.abbytech.razer.analog.protocol.Constants;
 import uk.co.bithatch.linuxio.EventCode;
 import uk.co.bithatch.linuxio.InputDevice;
 
 import java.nio.ByteBuffer;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
 
 public class HIDDecoder {
     private final Layout layout;
+    private final EventCode[] eventCodeMap;
 
     public HIDDecoder(Layout layout) {
         this.layout = layout;
+        this.eventCodeMap = layout.getEventCodeMap();
     }
 
     public List<InputDevice.Event> toInputDeviceEvent(ByteBuffer byteBuffer) {
-        return HIDDecoder.decode(byteBuffer).stream().map(this::mapToInputDeviceEvent)
-                .filter(eventKey -> !(eventKey.getCode().equals(EventCode.KEY_RESERVED) && eventKey.getValue() == 0))
-                .collect(Collectors.toList());
+        HidFrame frame = new HidFrame();
+        decode(byteBuffer, frame);
+        return frame.toEvents();
     }
 
-    private InputDevice.Event mapToInputDeviceEvent(HidPart hidPart) {
-        byte keyCode = hidPart.getKeyCode();
-        int value = hidPart.getValue();
-        int index = hidPart.keyCode & 0xFF;
-        EventCode eventCode = layout.getEventCodeMap()[index];
-        if (eventCode.equals(EventCode.KEY_RESERVED) && keyCode != 0x00) {
-            System.out.printf("UNMAPPED:%s%n", keyCode);
-        }
-        return new InputDevice.Event(eventCode, value);
+    //allocation free decode; frame is cleared and refilled with the keys contained in the report
+    public void decode(ByteBuffer byteBuffer, HidFrame frame) {
+        long start = PipelineMetrics.ENABLED ? System.nanoTime() : 0;
+        decodeReport(byteBuffer, frame);
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.record(PipelineMetrics.Stage.DECODE, start);
     }
 
-    private static List<HidPart> decode(ByteBuffer byteBuffer) {
+    //stops at the end of the buffer: a short transfer decodes the keys it holds, an empty one none
+    private void decodeReport(ByteBuffer byteBuffer, HidFrame frame) {
+        frame.clear();
+        if (!byteBuffer.hasRemaining())
+            return;
         byte b = byteBuffer.get();
         if (b == Constants.hidStartByteMedia) {
             System.out.println("media keys not implemented yet");
-            return Collections.emptyList();
+            return;
         } else if (b != Constants.hidStartByte) {
             System.err.printf("unexpected start byte %d%n", b);
-            return Collections.emptyList();
+            return;
         }
-        List<HidPart> hidPartList = new ArrayList<>();
-        for (int i = 1; i < Constants.HID_DATA_LENGTH - 2; i += 3) {
+        for (int i = 1; i < Constants.HID_DATA_LENGTH - 2 && byteBuffer.remaining() >= 3; i += 3) {
             byte keyCode = byteBuffer.get();
             if (keyCode == 0x00)
                 break;
-            short value = byteBuffer.getShort();
-            int unsignedValue = value & 0xFFFF;
-            hidPartList.add(new HidPart(keyCode, unsignedValue));
-        }
-        return hidPartList;
-    }
-
-    private static class HidPart {
-        private final byte keyCode;
-        private final int value;
-
-        private HidPart(Byte keyCode, Integer value) {
-            this.keyCode = keyCode;
-            this.value = value;
-        }
-
-        public byte getKeyCode() {
-            return keyCode;
-        }
-
-        public int getValue() {
-            return value;
+            int value = byteBuffer.getShort() & 0xFFFF;
+            int index = keyCode & 0xFF;
+            EventCode eventCode = eventCodeMap[index];
+            if (eventCode == EventCode.KEY_RESERVED) {
+                System.out.printf("UNMAPPED:%s%n", keyCode);
+                if (PipelineMetrics.ENABLED)
+                    PipelineMetrics.countUnmappedKey();
+                if (value == 0)
+                    continue;
+            }
+            frame.add(index, eventCode, value);
         }
     }
 }
@@ -0,0 +1,88 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.protocol.Constants;
+import uk.co.bithatch.linuxio.EventCode;
+import uk.co.bithatch.linuxio.InputDevice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//reusable decoded report; filled in place by HIDDecoder so the read loop does not allocate per report
+public class HidFrame {
+    public static final int MAX_KEYS = (Constants.HID_DATA_LENGTH - 1) / 3;
+    public static final int KEY_CODES = 256;
+    public static final int MAX_DEVICES = 8;
+
+    private final int[] keyCodes = new int[MAX_KEYS];
+    private final EventCode[] eventCodes = new EventCode[MAX_KEYS];
+    private final int[] values = new int[MAX_KEYS];
+    private int size;
+    private long timestamp;
+    private int device; //index of the board the report came from; selects the key namespace
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getKeyCode(int index) {
+        return keyCodes[index];
+    }
+
+    public EventCode getEventCode(int index) {
+        return eventCodes[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    public void setValue(int index, int value) {
+        values[index] = value;
+    }
+
+    //System.nanoTime() at which the report was read
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public int getDevice() {
+        return device;
+    }
+
+    public void setDevice(int device) {
+        this.device = device;
+    }
+
+    //key code qualified by the device namespace: device * KEY_CODES + key code
+    public int getKey(int index) {
+        return device * KEY_CODES + keyCodes[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int keyCode, EventCode eventCode, int value) {
+        keyCodes[size] = keyCode;
+        eventCodes[size] = eventCode;
+        values[size] = value;
+        size++;
+    }
+
+    //compatibility adapter for the List based api; allocates
+    public List<InputDevice.Event> toEvents() {
+        List<InputDevice.Event> events = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            events.add(new InputDevice.Event(eventCodes[i], values[i]));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,95 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+//turns key travel into the pressed/released state written to the virtual keyboard. parameters are indexed by hid
+//key code, state by device namespaced key (HidFrame.getKey). a key presses past its actuation point and releases once
+//it rises back to its reset point; with rapid trigger it also releases as soon as it rises by releaseSensitivity from
+//its lowest point and presses again once it falls by pressSensitivity from its highest point, anywhere past the reset point
+public class KeyActuation {
+    private static final int DEFAULT_SENSITIVITY = 1638; //2.5% of the travel
+
+    private final int[] actuationPoints = new int[HidFrame.KEY_CODES];
+    private final int[] resetPoints = new int[HidFrame.KEY_CODES];
+    private final boolean[] rapidTriggers = new boolean[HidFrame.KEY_CODES];
+    private final int[] pressSensitivities = new int[HidFrame.KEY_CODES];
+    private final int[] releaseSensitivities = new int[HidFrame.KEY_CODES];
+
+    private final boolean[] pressed = new boolean[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final boolean[] triggering = new boolean[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES]; //rapid trigger active
+    private final int[] extremes = new int[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES]; //deepest travel while pressed, shallowest while released
+
+    public KeyActuation(InputDeviceConfig config, Layout layout) {
+        Map<EventCode, InputDeviceConfig.KeyActuationConfig> keyActuations = config.getKeyActuations() != null ? config.getKeyActuations() : Map.of();
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        for (int keyCode = 0; keyCode < HidFrame.KEY_CODES; keyCode++) {
+            actuationPoints[keyCode] = Short.MAX_VALUE;
+            resetPoints[keyCode] = Short.MAX_VALUE;
+            if (keyCode >= eventCodeMap.length || eventCodeMap[keyCode] == EventCode.KEY_RESERVED)
+                continue;
+            InputDeviceConfig.KeyActuationConfig actuation = keyActuations.getOrDefault(eventCodeMap[keyCode], config.getDefaultKeyActuation());
+            if (actuation == null)
+                continue;
+            actuationPoints[keyCode] = actuation.getActuationPoint() != 0 ? actuation.getActuationPoint() : Short.MAX_VALUE;
+            resetPoints[keyCode] = actuation.getResetPoint() != 0 ? actuation.getResetPoint() : actuationPoints[keyCode];
+            rapidTriggers[keyCode] = actuation.isRapidTrigger();
+            pressSensitivities[keyCode] = actuation.getPressSensitivity() != 0 ? actuation.getPressSensitivity() : DEFAULT_SENSITIVITY;
+            releaseSensitivities[keyCode] = actuation.getReleaseSensitivity() != 0 ? actuation.getReleaseSensitivity() : DEFAULT_SENSITIVITY;
+            if (actuationPoints[keyCode] < 0 || actuationPoints[keyCode] > 0xFFFF || resetPoints[keyCode] < 0 || resetPoints[keyCode] > actuationPoints[keyCode]
+                    || pressSensitivities[keyCode] < 0 || releaseSensitivities[keyCode] < 0) {
+                throw new IllegalArgumentException("invalid key actuation for " + eventCodeMap[keyCode] + ": " + actuation);
+            }
+        }
+    }
+
+    //takes over the pressed keys of the actuation this one replaces, e.g. on a config reload, so held keys stay held
+    //and rapid trigger continues from the same extremes. call on the thread calling update(), between two frames
+    public void carryOver(KeyActuation previous) {
+        for (int key = 0; key < pressed.length; key++) {
+            pressed[key] = previous.pressed[key];
+            triggering[key] = previous.triggering[key] && rapidTriggers[key % HidFrame.KEY_CODES];
+            extremes[key] = previous.extremes[key];
+        }
+    }
+
+    //1 while the key at index is pressed, 0 otherwise
+    public int update(HidFrame frame, int index) {
+        int keyCode = frame.getKeyCode(index);
+        int key = frame.getKey(index);
+        int value = frame.getValue(index);
+        if (value <= resetPoints[keyCode]) {
+            pressed[key] = false;
+            triggering[key] = false;
+            return 0;
+        }
+        if (!triggering[key]) {
+            if (value > actuationPoints[keyCode]) {
+                pressed[key] = true;
+                triggering[key] = rapidTriggers[keyCode];
+                extremes[key] = value;
+            }
+            return pressed[key] ? 1 : 0;
+        }
+        int extreme = extremes[key];
+        if (pressed[key]) {
+            if (value > extreme)
+                extremes[key] = value;
+            else if (extreme - value >= releaseSensitivities[keyCode]) {
+                pressed[key] = false;
+                extremes[key] = value;
+            }
+        } else {
+            if (value < extreme)
+                extremes[key] = value;
+            else if (value - extreme >= pressSensitivities[keyCode]) {
+                pressed[key] = true;
+                extremes[key] = value;
+            }
+        }
+        return pressed[key] ? 1 : 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.CalibrationConfig;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//per key travel normalization of one board, applied by Keyboard to every decoded frame before filters, chords and
+//mappings see it: a calibrated key's rest..bottom range is stretched to 0-65535, so actuation points, deadzones and
+//axis ranges mean the same travel on every switch. rests and gains are precomputed per hid key code, normalizing is a
+//subtract, a multiply and a shift per key; keys without calibration pass unchanged
+public class KeyCalibration {
+    public static final int MIN_RANGE = 4096; //narrower ranges were not pressed all the way down while calibrating
+    private static final int MAX_TRAVEL = 0xFFFF;
+
+    private final int[] rests = new int[HidFrame.KEY_CODES];
+    private final int[] gains = new int[HidFrame.KEY_CODES]; //MAX_TRAVEL / range as 16.16 fixed point; 0 when not calibrated
+    private final int size;
+
+    public KeyCalibration(CalibrationConfig config, Layout layout) {
+        Map<EventCode, CalibrationConfig.KeyRange> keys = config.getKeys() != null ? config.getKeys() : Map.of();
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        Set<EventCode> calibrated = new HashSet<>();
+        for (int keyCode = 0; keyCode < eventCodeMap.length && keyCode < HidFrame.KEY_CODES; keyCode++) {
+            CalibrationConfig.KeyRange range = keys.get(eventCodeMap[keyCode]);
+            if (range == null || eventCodeMap[keyCode] == EventCode.KEY_RESERVED)
+                continue;
+            if (range.getRest() < 0 || range.getBottom() > MAX_TRAVEL || range.getBottom() - range.getRest() < MIN_RANGE) {
+                throw new IllegalArgumentException("invalid calibration for " + eventCodeMap[keyCode] + ": " + range);
+            }
+            int span = range.getBottom() - range.getRest();
+            rests[keyCode] = range.getRest();
+            gains[keyCode] = (int) ((((long) MAX_TRAVEL << 16) + span - 1) / span); //rounded up, so bottom-out reads 65535
+            calibrated.add(eventCodeMap[keyCode]);
+        }
+        for (EventCode eventCode : keys.keySet()) {
+            if (!calibrated.contains(eventCode)) {
+                throw new IllegalArgumentException("calibrated key not on this keyboard: " + eventCode);
+            }
+        }
+        size = calibrated.size();
+    }
+
+    //number of calibrated keys
+    public int size() {
+        return size;
+    }
+
+    public void apply(HidFrame frame) {
+        for (int i = 0; i < frame.size(); i++) {
+            int keyCode = frame.getKeyCode(i);
+            int gain = gains[keyCode];
+            if (gain == 0)
+                continue;
+            int travel = frame.getValue(i) - rests[keyCode];
+            frame.setValue(i, travel <= 0 ? 0 : (int) Math.min((long) travel * gain >> 16, MAX_TRAVEL));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+//per key travel noise filter, applied to a HidFrame in place between decoding and mapping. parameters are
+//indexed by hid key code, filter state by device namespaced key (HidFrame.getKey); nothing is allocated per report.
+//a released key (0) passes straight through and resets its state, the first value after that is taken as is
+public class KeyFilter {
+    private static final int NONE = 0;
+    private static final int EMA = 1;
+    private static final int ONE_EURO = 2;
+    private static final int HYSTERESIS = 3;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final int[] types = new int[HidFrame.KEY_CODES];
+    private final double[] alphas = new double[HidFrame.KEY_CODES];
+    private final int[] snaps = new int[HidFrame.KEY_CODES];
+    private final double[] minCutoffs = new double[HidFrame.KEY_CODES];
+    private final double[] betas = new double[HidFrame.KEY_CODES];
+    private final double[] derivativeCutoffs = new double[HidFrame.KEY_CODES];
+    private final int[] bands = new int[HidFrame.KEY_CODES];
+
+    private final double[] values = new double[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final double[] derivatives = new double[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final long[] timestamps = new long[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final boolean[] active = new boolean[HidFrame.KEY_CODES * HidFrame.MAX_DEVICES];
+    private final boolean enabled;
+
+    public KeyFilter(InputDeviceConfig config, Layout layout) {
+        Map<EventCode, InputDeviceConfig.KeyFilterConfig> keyFilters = config.getKeyFilters() != null ? config.getKeyFilters() : Map.of();
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        boolean any = false;
+        for (int keyCode = 0; keyCode < eventCodeMap.length && keyCode < HidFrame.KEY_CODES; keyCode++) {
+            InputDeviceConfig.KeyFilterConfig filter = keyFilters.getOrDefault(eventCodeMap[keyCode], config.getDefaultKeyFilter());
+            if (filter == null || filter.getType() == null || eventCodeMap[keyCode] == EventCode.KEY_RESERVED)
+                continue;
+            types[keyCode] = switch (filter.getType()) {
+                case NONE -> NONE;
+                case EMA -> EMA;
+                case ONE_EURO -> ONE_EURO;
+                case HYSTERESIS -> HYSTERESIS;
+            };
+            alphas[keyCode] = filter.getAlpha() != 0 ? filter.getAlpha() : 0.5;
+            snaps[keyCode] = filter.getSnap() != 0 ? filter.getSnap() : 2048;
+            minCutoffs[keyCode] = filter.getMinCutoff() != 0 ? filter.getMinCutoff() : 1;
+            betas[keyCode] = filter.getBeta() != 0 ? filter.getBeta() : 0.001;
+            derivativeCutoffs[keyCode] = filter.getDerivativeCutoff() != 0 ? filter.getDerivativeCutoff() : 1;
+            bands[keyCode] = filter.getBand() != 0 ? filter.getBand() : 64;
+            if (alphas[keyCode] < 0 || alphas[keyCode] > 1 || minCutoffs[keyCode] < 0 || betas[keyCode] < 0 || derivativeCutoffs[keyCode] < 0 || bands[keyCode] < 0) {
+                throw new IllegalArgumentException("invalid key filter for " + eventCodeMap[keyCode] + ": " + filter);
+            }
+            any |= types[keyCode] != NONE;
+        }
+        enabled = any;
+    }
+
+    //false when no key is filtered; callers can skip apply()
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //takes over the state of the filter this one replaces, e.g. on a config reload, for keys filtered the same way
+    //by both, so held keys continue smoothly. call on the thread calling apply(), between two frames
+    public void carryOver(KeyFilter previous) {
+        for (int key = 0; key < active.length; key++) {
+            int keyCode = key % HidFrame.KEY_CODES;
+            if (types[keyCode] == NONE || types[keyCode] != previous.types[keyCode])
+                continue;
+            values[key] = previous.values[key];
+            derivatives[key] = previous.derivatives[key];
+            timestamps[key] = previous.timestamps[key];
+            active[key] = previous.active[key];
+        }
+    }
+
+    public void apply(HidFrame frame) {
+        for (int i = 0; i < frame.size(); i++) {
+            int keyCode = frame.getKeyCode(i);
+            int type = types[keyCode];
+            if (type == NONE)
+                continue;
+            int key = frame.getKey(i);
+            int value = frame.getValue(i);
+            if (value == 0) {
+                active[key] = false;
+                continue;
+            }
+            long timestamp = frame.getTimestamp();
+            if (!active[key]) {
+                active[key] = true;
+                values[key] = value;
+                derivatives[key] = 0;
+                timestamps[key] = timestamp;
+                continue;
+            }
+            double filtered = switch (type) {
+                case EMA -> ema(keyCode, key, value);
+                case ONE_EURO -> oneEuro(keyCode, key, value, timestamp);
+                default -> hysteresis(keyCode, key, value);
+            };
+            values[key] = filtered;
+            timestamps[key] = timestamp;
+            frame.setValue(i, (int) Math.round(filtered));
+        }
+    }
+
+    private double ema(int keyCode, int key, int value) {
+        double last = values[key];
+        if (Math.abs(value - last) >= snaps[keyCode])
+            return value;
+        return last + alphas[keyCode] * (value - last);
+    }
+
+    //One Euro filter (Casiez et al.): a low pass whose cutoff rises with the travel speed, so resting jitter is
+    //smoothed heavily while a fast press passes with next to no lag
+    private double oneEuro(int keyCode, int key, int value, long timestamp) {
+        long elapsed = timestamp - timestamps[key];
+        if (elapsed <= 0)
+            return values[key];
+        double rate = NANOS_PER_SECOND / elapsed;
+        double last = values[key];
+        double derivative = (value - last) * rate;
+        double smoothedDerivative = derivatives[key] + smoothing(rate, derivativeCutoffs[keyCode]) * (derivative - derivatives[key]);
+        derivatives[key] = smoothedDerivative;
+        double cutoff = minCutoffs[keyCode] + betas[keyCode] * Math.abs(smoothedDerivative);
+        return last + smoothing(rate, cutoff) * (value - last);
+    }
+
+    private static double smoothing(double rate, double cutoff) {
+        double tau = 1 / (2 * Math.PI * cutoff);
+        return 1 / (1 + tau * rate);
+    }
+
+    private double hysteresis(int keyCode, int key, int value) {
+        double last = values[key];
+        if (Math.abs(value - last) < bands[keyCode] && value != 0xFFFF)
+            return last;
+        return value;
+    }
+}
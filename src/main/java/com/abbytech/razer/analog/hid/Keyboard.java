@@ -1,7 +1,10 @@
 package com.abbytech.razer.analog.hid;
 
 import com.abbytech.razer.analog.layout.Layout;
-import com.abbytech.razer.analog.protocol.USB;
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.protocol.ReportSource;
+import com.abbytech.razer.analog.util.SpscRing;
+import com.abbytech.razer.analog.util.ThreadPlacement;
 import uk.co.bithatch.linuxio.EventCode;
 import uk.co.bithatch.linuxio.InputDevice;
 
@@ -9,41 +12,129 @@ import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 
-import static com.abbytech.razer.analog.util.Util.halfwayDown;
-
 public class Keyboard {
-    private final USB usb;
+    private static final int RING_CAPACITY = 16;
+    private final ReportSource usb;
     private final HIDDecoder decoder;
     private final Layout layout;
+    private final HidFrame frame = new HidFrame();
+    private final int device;
+    private volatile KeyCalibration calibration; //null: raw travel
+
+    public Keyboard(ReportSource usb, Layout layout) {
+        this(usb, layout, 0);
+    }
 
-    public Keyboard(USB usb, Layout layout) {
+    //device: index stamped on every frame, selects the key namespace of this board
+    public Keyboard(ReportSource usb, Layout layout, int device) {
+        if (device < 0 || device >= HidFrame.MAX_DEVICES) {
+            throw new IllegalArgumentException("device index out of range: " + device);
+        }
         this.usb = usb;
         this.layout = layout;
+        this.device = device;
         this.decoder = new HIDDecoder(layout);
     }
 
     public void listen(EventListener listener) {
+        listenFrames(frame -> listener.onEvent(frame.toEvents()));
+    }
+
+    //reads, decodes and runs the listener on the calling thread
+    public void listenFrames(FrameListener listener) {
+        open();
+        ThreadPlacement.apply(ThreadPlacement.Role.READER);
+        while (readFrame(frame)) {
+            listener.onFrame(frame);
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.record(PipelineMetrics.Stage.END_TO_END, frame.getTimestamp());
+        }
+    }
+
+    //reads and decodes on a dedicated reader thread into a ring of frames; the listener runs on the calling thread,
+    //so a slow listener no longer delays the next read
+    public void listenFrames(FrameListener listener, SpscRing.WaitStrategy waitStrategy, boolean coalesce) {
+        open();
+        SpscRing<HidFrame> frames = newFrameRing(waitStrategy, coalesce);
+        RuntimeException[] readerFailure = new RuntimeException[1];
+        Thread reader = new Thread(() -> {
+            ThreadPlacement.apply(ThreadPlacement.Role.READER);
+            try {
+                readFrames(frames, null);
+            } catch (RuntimeException e) {
+                readerFailure[0] = e;
+            }
+        }, "hid-reader");
+        reader.start();
+        ThreadPlacement.apply(ThreadPlacement.Role.EMITTER);
+        try {
+            HidFrame next;
+            while ((next = frames.take()) != null) {
+                listener.onFrame(next);
+                if (PipelineMetrics.ENABLED)
+                    PipelineMetrics.record(PipelineMetrics.Stage.END_TO_END, next.getTimestamp());
+            }
+        } finally {
+            frames.close();
+        }
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (frames.getCoalesced() > 0)
+            System.out.printf("coalesced %d stale frames%n", frames.getCoalesced());
+        if (readerFailure[0] != null)
+            throw readerFailure[0];
+    }
+
+    public void open() {
         synchronized (usb){
             usb.openDevice();
         }
-        while (true) {
-            ByteBuffer byteBuffer;
-            synchronized (usb) {
-                if (usb.isDeviceOpen())
-                    byteBuffer = usb.readHIDData();
-                else
-                    break;
-            }
-            List<InputDevice.Event> events = decoder.toInputDeviceEvent(byteBuffer);
-            if (shouldTerminate(events)) {
-                closeIfOpen();
-                break;
-            } else {
-                listener.onEvent(events);
+    }
+
+    public static SpscRing<HidFrame> newFrameRing(SpscRing.WaitStrategy waitStrategy, boolean coalesce) {
+        return new SpscRing<>(RING_CAPACITY, HidFrame::new, waitStrategy, coalesce);
+    }
+
+    //producer loop of the ring mode: reads and decodes into frames until the source is closed, then closes the
+    //ring. onPublish (may be null) runs after every published frame
+    public void readFrames(SpscRing<HidFrame> frames, Runnable onPublish) {
+        try {
+            HidFrame slot;
+            while ((slot = frames.claim()) != null && readFrame(slot)) {
+                frames.publish();
+                if (onPublish != null)
+                    onPublish.run();
             }
+        } finally {
+            frames.close();
         }
     }
 
+    //false once the source is closed
+    private boolean readFrame(HidFrame frame) {
+        //not synchronized on usb; the read blocks and must not keep closeIfOpen from cancelling it
+        ByteBuffer byteBuffer = usb.readHIDData();
+        if (byteBuffer == null)
+            return false;
+        frame.setTimestamp(System.nanoTime());
+        frame.setDevice(device);
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.countReport();
+        decoder.decode(byteBuffer, frame);
+        KeyCalibration keyCalibration = calibration;
+        if (keyCalibration != null)
+            keyCalibration.apply(frame);
+        return true;
+    }
+
+    //normalizes the travel of this board's keys in every frame read from now on; null reads raw travel
+    public void setCalibration(KeyCalibration calibration) {
+        this.calibration = calibration;
+    }
+
     public void closeIfOpen() {
         synchronized (usb) {
             if (usb.isDeviceOpen()) {
@@ -56,23 +147,8 @@ public class Keyboard {
         }
     }
 
-    private boolean shouldTerminate(List<InputDevice.Event> events) {
-        if (events.size() == 2) {
-            InputDevice.Event event = events.get(0);
-            InputDevice.Event event1 = events.get(1);
-            EventCode eventCode = event.getCode();
-            EventCode eventCode1 = event1.getCode();
-            int value = event.getValue();
-            int value1 = event1.getValue();
-
-            if (eventCode.equals(EventCode.KEY_FN) && eventCode1.equals(EventCode.KEY_HOME)) {
-                if (value > halfwayDown && value1 > halfwayDown) {
-                    System.out.println("terminating");
-                    return true;
-                }
-            }
-        }
-        return false;
+    public Layout getLayout() {
+        return layout;
     }
 
     public Collection<EventCode> getCapabilities() {
@@ -82,4 +158,9 @@ public class Keyboard {
     public interface EventListener {
         void onEvent(List<InputDevice.Event> event);
     }
+
+    //frame is reused for the next report; listeners must not hold on to it
+    public interface FrameListener {
+        void onFrame(HidFrame frame);
+    }
 }
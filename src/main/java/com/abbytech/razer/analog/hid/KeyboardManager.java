@@ -0,0 +1,142 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.util.SpscRing;
+import com.abbytech.razer.analog.util.ThreadPlacement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+//drives several boards at once: one reader thread per board decodes into its own SpscRing and the calling thread
+//polls all rings round-robin, so frames are merged without locks and a busy board delays another board's frame
+//by at most one frame of its own. the first board to stop (closed, error) stops all of them
+public class KeyboardManager {
+    private final List<Keyboard> keyboards;
+    private final SpscRing.WaitStrategy waitStrategy;
+    private final boolean coalesce;
+    private volatile Thread waitingEmitter;
+
+    public KeyboardManager(List<Keyboard> keyboards, SpscRing.WaitStrategy waitStrategy, boolean coalesce) {
+        this.keyboards = List.copyOf(keyboards);
+        this.waitStrategy = waitStrategy;
+        this.coalesce = coalesce;
+    }
+
+    public void listenFrames(Keyboard.FrameListener listener) {
+        for (int i = 0; i < keyboards.size(); i++) {
+            try {
+                keyboards.get(i).open();
+            } catch (RuntimeException e) {
+                closeAll();
+                throw e;
+            }
+        }
+        List<SpscRing<HidFrame>> rings = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        AtomicReference<RuntimeException> readerFailure = new AtomicReference<>();
+        for (int i = 0; i < keyboards.size(); i++) {
+            Keyboard keyboard = keyboards.get(i);
+            SpscRing<HidFrame> frames = Keyboard.newFrameRing(waitStrategy, coalesce);
+            rings.add(frames);
+            readers.add(new Thread(() -> {
+                ThreadPlacement.apply(ThreadPlacement.Role.READER);
+                try {
+                    keyboard.readFrames(frames, this::signal);
+                } catch (RuntimeException e) {
+                    readerFailure.compareAndSet(null, e);
+                } finally {
+                    closeAll();
+                    signal();
+                }
+            }, "hid-reader-" + i));
+        }
+        readers.forEach(Thread::start);
+        ThreadPlacement.apply(ThreadPlacement.Role.EMITTER);
+        try {
+            emit(rings, listener);
+        } finally {
+            closeAll();
+            rings.forEach(SpscRing::close);
+        }
+        for (Thread reader : readers) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long coalesced = rings.stream().mapToLong(SpscRing::getCoalesced).sum();
+        if (coalesced > 0)
+            System.out.printf("coalesced %d stale frames%n", coalesced);
+        if (readerFailure.get() != null)
+            throw readerFailure.get();
+    }
+
+    private void emit(List<SpscRing<HidFrame>> rings, Keyboard.FrameListener listener) {
+        while (true) {
+            boolean idle = true;
+            for (int i = 0; i < rings.size(); i++) {
+                HidFrame frame = rings.get(i).poll();
+                if (frame != null) {
+                    idle = false;
+                    listener.onFrame(frame);
+                    if (PipelineMetrics.ENABLED)
+                        PipelineMetrics.record(PipelineMetrics.Stage.END_TO_END, frame.getTimestamp());
+                }
+            }
+            if (idle) {
+                if (isDrained(rings))
+                    return;
+                await(rings);
+            }
+        }
+    }
+
+    private void await(List<SpscRing<HidFrame>> rings) {
+        switch (waitStrategy) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELD -> Thread.yield();
+            case PARK -> {
+                waitingEmitter = Thread.currentThread();
+                if (!hasNext(rings) && !isDrained(rings))
+                    LockSupport.park(this);
+                waitingEmitter = null;
+            }
+        }
+    }
+
+    private static boolean hasNext(List<SpscRing<HidFrame>> rings) {
+        for (int i = 0; i < rings.size(); i++) {
+            if (rings.get(i).hasNext())
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isDrained(List<SpscRing<HidFrame>> rings) {
+        for (int i = 0; i < rings.size(); i++) {
+            SpscRing<HidFrame> ring = rings.get(i);
+            if (!ring.isClosed() || ring.hasNext())
+                return false;
+        }
+        return true;
+    }
+
+    private void signal() {
+        Thread emitter = waitingEmitter;
+        if (emitter != null)
+            LockSupport.unpark(emitter);
+    }
+
+    public void closeAll() {
+        for (Keyboard keyboard : keyboards) {
+            keyboard.closeIfOpen();
+        }
+    }
+
+    public List<Keyboard> getKeyboards() {
+        return keyboards;
+    }
+}
@@ -0,0 +1,79 @@
+package com.abbytech.razer.analog.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//log-linear (HDR style) histogram of nanosecond values: exact below 32, then 16 sub-buckets per power of two
+//(~6% precision) up to 2^40ns. recording is a single atomic increment, no allocation
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.clamp(nanos, 0, MAX_VALUE)));
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    //highest value that falls into the bucket
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long sub = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    //value at the given percentile (0-100), as the upper bound of its bucket; 0 when empty
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0)
+                return upperBound(i);
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dns p99=%dns p99.9=%dns max=%dns",
+                getCount(), getPercentile(50), getPercentile(99), getPercentile(99.9), getMax());
+    }
+}
@@ -0,0 +1,179 @@
+package com.abbytech.razer.analog.metrics;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+//per stage latency histograms and pipeline counters. enabled with -Drazer.metrics=true; ENABLED is a constant so
+//disabled probes are removed by the JIT. exposed over JMX, dumped every -Drazer.metrics.interval seconds (if set)
+//and on SIGUSR1
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("razer.metrics");
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    public enum Stage {
+        USB_READ, //transfer completion until the report is handed to the reader thread
+        DECODE,
+        COMBO,
+        MAPPING,
+        EMIT,
+        END_TO_END //report handed to the reader thread until all virtual device writes returned
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private static final AtomicLong reports = new AtomicLong();
+    private static final AtomicLong eventsEmitted = new AtomicLong();
+    private static final AtomicLong unmappedKeys = new AtomicLong();
+    private static final AtomicLong usbErrors = new AtomicLong();
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public static void countReport() {
+        reports.incrementAndGet();
+    }
+
+    public static void countEvents(int count) {
+        eventsEmitted.addAndGet(count);
+    }
+
+    public static void countUnmappedKey() {
+        unmappedKeys.incrementAndGet();
+    }
+
+    public static void countUsbError() {
+        usbErrors.incrementAndGet();
+    }
+
+    public static PipelineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public static LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public static void start() {
+        if (!ENABLED)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("com.abbytech.razer.analog:type=PipelineMetrics"));
+        } catch (Exception e) {
+            System.err.printf("unable to register metrics mbean: %s%n", e);
+        }
+        long interval = Long.getLong("razer.metrics.interval", 0);
+        if (interval > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(() -> System.out.print(INSTANCE.dump()), interval, interval, TimeUnit.SECONDS);
+        }
+        try {
+            dumpOnSignal("USR1");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.printf("metrics dump on signal unavailable: %s%n", e);
+        }
+    }
+
+    //sun.misc.Signal.handle(new Signal(name), handler), looked up at runtime: referencing the internal api directly
+    //makes javac warn, and that warning cannot be suppressed
+    private static void dumpOnSignal(String name) throws ReflectiveOperationException {
+        Class<?> signalClass = Class.forName("sun.misc.Signal");
+        Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+        Object handler = Proxy.newProxyInstance(PipelineMetrics.class.getClassLoader(), new Class<?>[]{handlerClass}, (proxy, method, args) -> switch (method.getName()) {
+            case "handle" -> {
+                System.out.print(INSTANCE.dump());
+                yield null;
+            }
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> "metrics dump on " + name;
+        });
+        signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, signalClass.getConstructor(String.class).newInstance(name), handler);
+    }
+
+    @Override
+    public long getReports() {
+        return reports.get();
+    }
+
+    @Override
+    public long getEventsEmitted() {
+        return eventsEmitted.get();
+    }
+
+    @Override
+    public long getUnmappedKeys() {
+        return unmappedKeys.get();
+    }
+
+    @Override
+    public long getUsbErrors() {
+        return usbErrors.get();
+    }
+
+    @Override
+    public Map<String, Long> getP50Nanos() {
+        return perStage(histogram -> histogram.getPercentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getP99Nanos() {
+        return perStage(histogram -> histogram.getPercentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getMaxNanos() {
+        return perStage(LatencyHistogram::getMax);
+    }
+
+    private static Map<String, Long> perStage(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            values.put(stage.name(), value.applyAsLong(histograms[stage.ordinal()]));
+        }
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("reports=%d events=%d unmapped=%d usbErrors=%d%n",
+                reports.get(), eventsEmitted.get(), unmappedKeys.get(), usbErrors.get()));
+        for (Stage stage : STAGES) {
+            builder.append(String.format("  %-10s %s%n", stage, histograms[stage.ordinal()]));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        reports.set(0);
+        eventsEmitted.set(0);
+        unmappedKeys.set(0);
+        usbErrors.set(0);
+    }
+}
@@ -0,0 +1,15 @@
+package com.abbytech.razer.analog.metrics;
+
+import java.util.Map;
+
+public interface PipelineMetricsMXBean {
+    long getReports();
+    long getEventsEmitted();
+    long getUnmappedKeys();
+    long getUsbErrors();
+    Map<String, Long> getP50Nanos();
+    Map<String, Long> getP99Nanos();
+    Map<String, Long> getMaxNanos();
+    String dump();
+    void reset();
+}
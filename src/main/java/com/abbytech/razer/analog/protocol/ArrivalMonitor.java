@@ -0,0 +1,27 @@
+package com.abbytech.razer.analog.protocol;
+
+//tells a disconnected ReportSource when it is worth trying to reopen its device
+public interface ArrivalMonitor extends AutoCloseable {
+    long POLL_INTERVAL_MILLIS = 250;
+
+    //waits up to timeoutMillis for the device to (re)appear; true when it did, or when the monitor cannot tell
+    boolean awaitArrival(long timeoutMillis) throws InterruptedException;
+
+    @Override
+    void close();
+
+    //fallback without arrival notifications: every interval is a possible arrival
+    static ArrivalMonitor polling() {
+        return new ArrivalMonitor() {
+            @Override
+            public boolean awaitArrival(long timeoutMillis) throws InterruptedException {
+                Thread.sleep(Math.min(timeoutMillis, POLL_INTERVAL_MILLIS));
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
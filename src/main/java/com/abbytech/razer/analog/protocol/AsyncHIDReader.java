@@ -0,0 +1,178 @@
+package com.abbytech.razer.analog.protocol;
+
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.util.SpscRing;
+import com.abbytech.razer.analog.util.ThreadPlacement;
+import org.usb4java.Context;
+import org.usb4java.DeviceHandle;
+import org.usb4java.LibUsb;
+import org.usb4java.LibUsbException;
+import org.usb4java.Transfer;
+import org.usb4java.TransferCallback;
+
+import java.nio.ByteBuffer;
+
+import static com.abbytech.razer.analog.protocol.Constants.ENDPOINT_IN_ANALOG;
+import static com.abbytech.razer.analog.protocol.Constants.HID_DATA_LENGTH;
+
+//keeps several interrupt transfers in flight on the analog endpoint; completed reports are copied into a
+//preallocated slot ring (producer: the libusb event thread, consumer: the caller of read()). the event thread
+//handles the board's own context (see USB), so no other thread ever completes these transfers
+class AsyncHIDReader implements TransferCallback {
+    private static final int TRANSFER_COUNT = 4;
+    private static final int SLOT_COUNT = 64;
+    private static final long EVENT_TIMEOUT_MICROS = 100_000;
+
+    private final Context context;
+    private final DeviceHandle deviceHandle;
+    private final Transfer[] transfers = new Transfer[TRANSFER_COUNT];
+    private final SpscRing<Report> reports = new SpscRing<>(SLOT_COUNT, Report::new, SpscRing.WaitStrategy.PARK, false);
+    private long lastCompletionTime;
+    private volatile boolean running;
+    private volatile int error = LibUsb.SUCCESS;
+    private int inFlight;
+    private long overruns;
+    private Thread eventThread;
+
+    AsyncHIDReader(Context context, DeviceHandle deviceHandle) {
+        this.context = context;
+        this.deviceHandle = deviceHandle;
+    }
+
+    void start() {
+        running = true;
+        for (int i = 0; i < TRANSFER_COUNT; i++) {
+            Transfer transfer = LibUsb.allocTransfer();
+            LibUsb.fillInterruptTransfer(transfer, deviceHandle, ENDPOINT_IN_ANALOG,
+                    ByteBuffer.allocateDirect(HID_DATA_LENGTH), this, null, 0);
+            transfers[i] = transfer;
+        }
+        synchronized (this) {
+            for (Transfer transfer : transfers) {
+                int result = LibUsb.submitTransfer(transfer);
+                if (result != LibUsb.SUCCESS) {
+                    running = false;
+                    throw new LibUsbException("Unable to submit transfer", result);
+                }
+                inFlight++;
+            }
+        }
+        eventThread = new Thread(this::handleEvents, "usb-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+    }
+
+    //blocks until the next report arrives; returns null once the reader is stopped.
+    //the returned buffer stays valid until the next call
+    ByteBuffer read() {
+        Report report = reports.take();
+        if (report == null)
+            return null;
+        lastCompletionTime = report.completionTime;
+        return report.data;
+    }
+
+    //System.nanoTime() at which the transfer of the last report read completed (metrics only)
+    long getLastCompletionTime() {
+        return lastCompletionTime;
+    }
+
+    int getError() {
+        return error;
+    }
+
+    void stop() {
+        running = false;
+        synchronized (this) {
+            for (Transfer transfer : transfers) {
+                if (transfer != null) {
+                    LibUsb.cancelTransfer(transfer);
+                }
+            }
+        }
+        if (eventThread != null && eventThread != Thread.currentThread()) {
+            try {
+                eventThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (int i = 0; i < TRANSFER_COUNT; i++) {
+            if (transfers[i] != null) {
+                LibUsb.freeTransfer(transfers[i]);
+                transfers[i] = null;
+            }
+        }
+        reports.close();
+        if (overruns > 0) {
+            System.out.printf("dropped %d reports; consumer fell behind%n", overruns);
+        }
+    }
+
+    private void handleEvents() {
+        ThreadPlacement.apply(ThreadPlacement.Role.USB);
+        while (true) {
+            synchronized (this) {
+                if (!running && inFlight == 0)
+                    break;
+            }
+            int result = LibUsb.handleEventsTimeout(context, EVENT_TIMEOUT_MICROS);
+            if (result != LibUsb.SUCCESS && result != LibUsb.ERROR_INTERRUPTED) {
+                fail(result);
+            }
+        }
+    }
+
+    @Override
+    public void processTransfer(Transfer transfer) {
+        int status = transfer.status();
+        if (status == LibUsb.TRANSFER_COMPLETED) {
+            publish(transfer.buffer(), transfer.actualLength());
+        } else if (status != LibUsb.TRANSFER_TIMED_OUT) {
+            synchronized (this) {
+                inFlight--;
+            }
+            if (status != LibUsb.TRANSFER_CANCELLED) {
+                fail(status == LibUsb.TRANSFER_NO_DEVICE ? LibUsb.ERROR_NO_DEVICE : LibUsb.ERROR_IO);
+            }
+            return;
+        }
+        synchronized (this) {
+            int result = running ? LibUsb.submitTransfer(transfer) : LibUsb.ERROR_INTERRUPTED;
+            if (result != LibUsb.SUCCESS) {
+                inFlight--;
+                if (running) {
+                    fail(result);
+                }
+            }
+        }
+    }
+
+    private void publish(ByteBuffer data, int length) {
+        Report report = reports.tryClaim();
+        if (report == null) {
+            //consumer is SLOT_COUNT reports behind; drop the newest, the callback must not block
+            overruns++;
+            return;
+        }
+        if (PipelineMetrics.ENABLED)
+            report.completionTime = System.nanoTime();
+        report.data.clear();
+        report.data.put(0, data, 0, length);
+        report.data.limit(length);
+        reports.publish();
+    }
+
+    private void fail(int result) {
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.countUsbError();
+        error = result;
+        running = false;
+        reports.close();
+    }
+
+    private static final class Report {
+        private final ByteBuffer data = ByteBuffer.allocate(HID_DATA_LENGTH);
+        private long completionTime; //only written with metrics enabled
+    }
+}
@@ -0,0 +1,10 @@
+package com.abbytech.razer.analog.protocol;
+
+//report source reading one physical board, as found by a bus scan of its backend
+public interface BoardReportSource extends ReportSource {
+    //bus-port path, e.g. "3-2.1"; null when the first board found is opened
+    String getDeviceId();
+
+    //waits for this board to be plugged back in, for ReconnectingReportSource
+    ArrivalMonitor newArrivalMonitor();
+}
@@ -0,0 +1,244 @@
+package com.abbytech.razer.analog.protocol;
+
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.util.LibC;
+import com.sun.jna.Native;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.abbytech.razer.analog.protocol.Constants.*;
+
+//alternative to USB (-Drazer.backend=hidraw): reads the analog reports from the board's /dev/hidrawN node through a
+//FileChannel and sends the device modes as hid feature reports. the kernel drivers stay bound, so neither libusb nor
+//raw usb access is needed, only access to the hidraw nodes. reports are read by the calling thread straight into a
+//direct buffer, without an event thread or a hand-off in between
+public class HidrawReportSource implements BoardReportSource {
+    private static final Path SYSFS_HIDRAW = Path.of("/sys/class/hidraw");
+    private static final int BUS_USB = 0x03;
+    private static final int COMMAND_INTERFACE = 3; //wIndex of the SET_REPORT control transfer USB sends
+    private static final int FEATURE_REPORT_LENGTH = COMMAND_LENGTH + 1; //report number 0 goes first
+    private static final long HIDIOCSFEATURE = 0xc0004806L | (long) FEATURE_REPORT_LENGTH << 16; //_IOWR('H', 0x06, len)
+
+    private final short productId;
+    private final String deviceId; //bus-port path of the board to open; null opens the first one found
+    private final Path node; //fixed node read without scanning or device mode commands; null for a board
+    private final ByteBuffer report = ByteBuffer.allocateDirect(HID_DATA_LENGTH);
+    private final ByteBuffer featureReport = ByteBuffer.allocateDirect(FEATURE_REPORT_LENGTH);
+    private volatile FileChannel channel;
+    private int commandDescriptor = -1;
+    private volatile boolean disconnected;
+    @Getter
+    private volatile boolean deviceOpen = false;
+
+    public HidrawReportSource(short productId) {
+        this(productId, null);
+    }
+
+    public HidrawReportSource(short productId, String deviceId) {
+        this.productId = productId;
+        this.deviceId = deviceId;
+        this.node = null;
+    }
+
+    //reads reports from the node as they are, e.g. from a named pipe standing in for the board
+    public HidrawReportSource(Path node) {
+        this.productId = 0;
+        this.deviceId = null;
+        this.node = node;
+    }
+
+    //one source per connected board, identified by bus-port path (e.g. "3-2.1") like USB.findAll
+    public static List<HidrawReportSource> findAll(short productId) {
+        Set<String> deviceIds = new LinkedHashSet<>();
+        for (HidrawNode hidrawNode : scan(productId)) {
+            if (hidrawNode.analog())
+                deviceIds.add(hidrawNode.deviceId());
+        }
+        List<HidrawReportSource> sources = new ArrayList<>();
+        for (String id : deviceIds) {
+            sources.add(new HidrawReportSource(productId, id));
+        }
+        return sources;
+    }
+
+    @Override
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    //hidraw nodes are found by scanning sysfs, which is cheap enough to simply retry
+    @Override
+    public ArrivalMonitor newArrivalMonitor() {
+        return ArrivalMonitor.polling();
+    }
+
+    @Override
+    public void openDevice() {
+        if (deviceOpen) {
+            throw new IllegalStateException("device already open");
+        }
+        if (node != null) {
+            channel = openChannel(node);
+            disconnected = false;
+            deviceOpen = true;
+            return;
+        }
+        Path analogNode = null;
+        Path commandNode = null;
+        String id = deviceId;
+        for (HidrawNode hidrawNode : scan(productId)) {
+            if (id == null && hidrawNode.analog())
+                id = hidrawNode.deviceId();
+            if (!hidrawNode.deviceId().equals(id))
+                continue;
+            if (hidrawNode.analog())
+                analogNode = hidrawNode.path();
+            if (hidrawNode.interfaceNumber() == COMMAND_INTERFACE)
+                commandNode = hidrawNode.path();
+        }
+        if (analogNode == null || commandNode == null) {
+            throw new IllegalStateException(id == null ? "no device found" : "device " + id + " not found");
+        }
+        int descriptor = LibC.open(commandNode.toString(), LibC.O_RDWR);
+        if (descriptor < 0) {
+            throw new IllegalStateException(String.format("unable to open %s: errno %d", commandNode, Native.getLastError()));
+        }
+        try {
+            channel = openChannel(analogNode);
+        } catch (RuntimeException e) {
+            LibC.close(descriptor);
+            throw e;
+        }
+        commandDescriptor = descriptor;
+        disconnected = false;
+        sendFeatureReport(setDriverDeviceMode);
+        deviceOpen = true;
+        System.out.printf("device %s opened (%s, commands to %s)%n", id, analogNode, commandNode);
+    }
+
+    private static FileChannel openChannel(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void closeDevice() {
+        if (!deviceOpen) {
+            throw new IllegalStateException("device not open");
+        }
+        System.out.println("closing device");
+        deviceOpen = false;
+        try {
+            channel.close(); //a read blocked on it fails with AsynchronousCloseException
+        } catch (IOException e) {
+            System.err.printf("closing hidraw node failed: %s%n", e.getMessage());
+        }
+        if (commandDescriptor >= 0) {
+            if (!disconnected) //unplugged; nothing left to reset
+                sendFeatureReport(setNormalDeviceMode);
+            LibC.close(commandDescriptor);
+            commandDescriptor = -1;
+        }
+    }
+
+    @Override
+    public ByteBuffer readHIDData() {
+        FileChannel reportChannel = channel;
+        if (reportChannel == null) {
+            throw new IllegalStateException("attempt to read closed device");
+        }
+        report.clear();
+        int read;
+        try {
+            read = reportChannel.read(report);
+        } catch (ClosedChannelException e) {
+            return null; //closed by closeDevice()
+        } catch (IOException e) {
+            disconnected = true;
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.countUsbError();
+            throw new RuntimeException(e);
+        }
+        if (read < 0) {
+            disconnected = true;
+            return null;
+        }
+        //hidraw returns one whole report per read; a shorter one is padded, the decoder stops at the first empty key
+        while (report.hasRemaining()) {
+            report.put((byte) 0);
+        }
+        return report.flip();
+    }
+
+    //the command as a feature report on the command interface, the hidraw equivalent of USB.sendCommand
+    private void sendFeatureReport(byte[] mode) {
+        featureReport.clear();
+        featureReport.put((byte) 0); //report number; the board does not number its reports
+        featureReport.put(mode);
+        if (LibC.ioctl(commandDescriptor, HIDIOCSFEATURE, featureReport) < 0) {
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.countUsbError();
+            System.err.printf("hidraw feature report failed: errno %d%n", Native.getLastError());
+        }
+    }
+
+    //path: /dev/hidrawN; analog: the interface with the analog endpoint
+    private record HidrawNode(String deviceId, int interfaceNumber, boolean analog, Path path) {
+    }
+
+    private static List<HidrawNode> scan(short productId) {
+        List<HidrawNode> hidrawNodes = new ArrayList<>();
+        if (!Files.isDirectory(SYSFS_HIDRAW))
+            return hidrawNodes;
+        try (Stream<Path> entries = Files.list(SYSFS_HIDRAW)) {
+            for (Path entry : entries.sorted(Comparator.comparingInt(HidrawReportSource::nodeNumber)).toList()) {
+                HidrawNode hidrawNode = readNode(entry, productId);
+                if (hidrawNode != null)
+                    hidrawNodes.add(hidrawNode);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return hidrawNodes;
+    }
+
+    private static int nodeNumber(Path entry) {
+        String name = entry.getFileName().toString();
+        return Integer.parseInt(name.substring("hidraw".length()));
+    }
+
+    //null unless the node belongs to an interface of a matching usb board
+    private static HidrawNode readNode(Path entry, short productId) throws IOException {
+        //e.g. /sys/devices/.../3-2.1/3-2.1:1.1/0003:1532:02A6.0005: bus:vendor:product.instance
+        Path hidDevice = entry.resolve("device").toRealPath();
+        String[] ids = hidDevice.getFileName().toString().split("[:.]");
+        if (ids.length != 4 || Integer.parseInt(ids[0], 16) != BUS_USB || Integer.parseInt(ids[1], 16) != (VENDOR_RAZER & 0xFFFF)
+                || Integer.parseInt(ids[2], 16) != (productId & 0xFFFF))
+            return null;
+        //the usb interface, named <bus-port path>:<configuration>.<interface>
+        Path usbInterface = hidDevice.getParent();
+        String name = usbInterface.getFileName().toString();
+        Path interfaceNumber = usbInterface.resolve("bInterfaceNumber");
+        if (name.indexOf(':') < 0 || !Files.isRegularFile(interfaceNumber))
+            return null;
+        boolean analog = Files.exists(usbInterface.resolve(String.format("ep_%02x", ENDPOINT_IN_ANALOG & 0xFF)));
+        return new HidrawNode(name.substring(0, name.indexOf(':')), Integer.parseInt(Files.readString(interfaceNumber).strip(), 16),
+                analog, Path.of("/dev").resolve(entry.getFileName().toString()));
+    }
+}
@@ -0,0 +1,67 @@
+package com.abbytech.razer.analog.protocol;
+
+import org.usb4java.Context;
+import org.usb4java.Device;
+import org.usb4java.HotplugCallback;
+import org.usb4java.HotplugCallbackHandle;
+import org.usb4java.LibUsb;
+import org.usb4java.LibUsbException;
+
+import java.util.concurrent.TimeUnit;
+
+//libusb hotplug based arrival monitor. the arriving device is handed to the USB source directly, so reopening
+//does not scan the bus. callbacks are dispatched from libusb event handling of the source's context, which the
+//waiting thread drives while the board is away. holds that context until closed
+class HotplugArrivalMonitor implements ArrivalMonitor, HotplugCallback {
+    private static final long EVENT_TIMEOUT_MICROS = 50_000;
+
+    private final USB usb;
+    private final Context context;
+    private final HotplugCallbackHandle callbackHandle = new HotplugCallbackHandle();
+    private volatile boolean arrived;
+    private boolean closed;
+
+    HotplugArrivalMonitor(USB usb, Context context, short vendorId, short productId) {
+        this.usb = usb;
+        this.context = context;
+        int result = LibUsb.hotplugRegisterCallback(context, LibUsb.HOTPLUG_EVENT_DEVICE_ARRIVED, LibUsb.HOTPLUG_NO_FLAGS,
+                vendorId, productId, LibUsb.HOTPLUG_MATCH_ANY, this, null, callbackHandle);
+        if (result != LibUsb.SUCCESS) {
+            usb.releaseContext();
+            throw new LibUsbException("Unable to register hotplug callback", result);
+        }
+    }
+
+    @Override
+    public int processEvent(Context context, Device device, int event, Object userData) {
+        if (event == LibUsb.HOTPLUG_EVENT_DEVICE_ARRIVED && usb.offerDevice(device))
+            arrived = true;
+        return 0; //stay registered
+    }
+
+    @Override
+    public boolean awaitArrival(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!arrived) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long remainingMicros = TimeUnit.NANOSECONDS.toMicros(deadline - System.nanoTime());
+            if (remainingMicros <= 0)
+                return false;
+            int result = LibUsb.handleEventsTimeout(context, Math.min(remainingMicros, EVENT_TIMEOUT_MICROS));
+            if (result != LibUsb.SUCCESS && result != LibUsb.ERROR_INTERRUPTED)
+                throw new LibUsbException("Unable to handle events", result);
+        }
+        arrived = false;
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        LibUsb.hotplugDeregisterCallback(context, callbackHandle);
+        usb.releaseContext();
+    }
+}
@@ -0,0 +1,61 @@
+package com.abbytech.razer.analog.protocol;
+
+import java.nio.ByteBuffer;
+
+//serves preloaded reports round-robin from memory, as fast as they are read; runs the pipeline without a keyboard.
+//reports are handed out rewound, not copied, so reading allocates nothing
+public class MemoryReportSource implements ReportSource {
+    private final ByteBuffer[] reports;
+    private final long limit; //reports served before readHIDData() returns null
+    private volatile boolean open;
+    private int next;
+    private long reads;
+
+    public MemoryReportSource(ByteBuffer[] reports) {
+        this(reports, Long.MAX_VALUE);
+    }
+
+    public MemoryReportSource(ByteBuffer[] reports, long limit) {
+        if (reports.length == 0) {
+            throw new IllegalArgumentException("no reports");
+        }
+        this.reports = reports.clone();
+        this.limit = limit;
+    }
+
+    @Override
+    public void openDevice() {
+        if (open) {
+            throw new IllegalStateException("device already open");
+        }
+        open = true;
+    }
+
+    @Override
+    public void closeDevice() {
+        if (!open) {
+            throw new IllegalStateException("device not open");
+        }
+        open = false;
+    }
+
+    @Override
+    public boolean isDeviceOpen() {
+        return open;
+    }
+
+    @Override
+    public ByteBuffer readHIDData() {
+        if (!open || reads == limit)
+            return null;
+        ByteBuffer report = reports[next];
+        next = next + 1 == reports.length ? 0 : next + 1;
+        reads++;
+        return report.rewind();
+    }
+
+    //reports served so far; read it from the reading thread or after it finished
+    public long getReads() {
+        return reads;
+    }
+}
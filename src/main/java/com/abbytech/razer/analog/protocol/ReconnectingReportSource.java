@@ -0,0 +1,166 @@
+package com.abbytech.razer.analog.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+//keeps a source readable across unplugs and bus resets. a failed read closes the device and returns one report
+//releasing the keys held in the last report; the following read blocks until the device is back and reopened
+//(which for USB re-claims the interfaces and resends the driver mode), so the virtual devices stay alive
+public class ReconnectingReportSource implements ReportSource {
+    private static final long ARRIVAL_TIMEOUT_MILLIS = 250;
+    private static final long RETRY_MILLIS = 20;
+    private static final int QUICK_RETRIES = 25; //after an arrival; the device node may not be accessible yet
+
+    private final ReportSource source;
+    private final ArrivalMonitor monitor;
+    private final Object lock = new Object();
+    private final ByteBuffer lastReport = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+    private final ByteBuffer releaseReport = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+    private volatile boolean open;
+    private boolean disconnected; //reader side only
+    private long disconnectedAt;
+
+    public ReconnectingReportSource(ReportSource source, ArrivalMonitor monitor) {
+        this.source = source;
+        this.monitor = monitor;
+        lastReport.limit(0);
+    }
+
+    @Override
+    public void openDevice() {
+        synchronized (lock) {
+            if (open) {
+                throw new IllegalStateException("device already open");
+            }
+            source.openDevice();
+            open = true;
+            disconnected = false;
+        }
+    }
+
+    @Override
+    public void closeDevice() {
+        synchronized (lock) {
+            if (!open) {
+                throw new IllegalStateException("device not open");
+            }
+            open = false;
+            if (source.isDeviceOpen())
+                source.closeDevice();
+        }
+        monitor.close();
+    }
+
+    //open from openDevice() until closeDevice(), including while reconnecting
+    @Override
+    public boolean isDeviceOpen() {
+        return open;
+    }
+
+    @Override
+    public ByteBuffer readHIDData() {
+        while (open) {
+            if (disconnected && !reconnect())
+                break;
+            ByteBuffer report = read();
+            if (report != null) {
+                lastReport.clear();
+                lastReport.put(0, report, report.position(), report.remaining());
+                lastReport.limit(report.remaining());
+                return report;
+            }
+            if (!open)
+                break;
+            disconnect();
+            if (buildReleaseReport())
+                return releaseReport;
+        }
+        return null;
+    }
+
+    private ByteBuffer read() {
+        try {
+            return source.readHIDData();
+        } catch (RuntimeException e) {
+            if (open)
+                System.err.printf("device read failed: %s%n", e.getMessage());
+            return null;
+        }
+    }
+
+    private void disconnect() {
+        System.out.println("device disconnected; waiting for it to come back");
+        disconnected = true;
+        disconnectedAt = System.nanoTime();
+        synchronized (lock) {
+            if (source.isDeviceOpen()) {
+                try {
+                    source.closeDevice();
+                } catch (RuntimeException e) {
+                    System.err.printf("closing disconnected device failed: %s%n", e.getMessage());
+                }
+            }
+        }
+    }
+
+    //blocks until the device is reopened (true) or this source is closed (false)
+    private boolean reconnect() {
+        int quickRetries = 0;
+        while (open) {
+            try {
+                if (quickRetries > 0) {
+                    quickRetries--;
+                    Thread.sleep(RETRY_MILLIS);
+                } else if (monitor.awaitArrival(ARRIVAL_TIMEOUT_MILLIS)) {
+                    quickRetries = QUICK_RETRIES;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            //also tried after a timeout, in case an arrival was missed
+            if (tryOpen()) {
+                System.out.printf("device reconnected after %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedAt));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryOpen() {
+        synchronized (lock) {
+            if (!open)
+                return false;
+            try {
+                source.openDevice();
+                disconnected = false;
+                lastReport.limit(0);
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    //the keys of the last report at value 0, so nothing stays pressed while the device is away
+    private boolean buildReleaseReport() {
+        if (lastReport.limit() < 4 || lastReport.get(0) != Constants.hidStartByte)
+            return false;
+        releaseReport.clear();
+        releaseReport.put(Constants.hidStartByte);
+        for (int i = 1; i + 2 < lastReport.limit(); i += 3) {
+            byte keyCode = lastReport.get(i);
+            if (keyCode == 0x00)
+                break;
+            releaseReport.put(keyCode).putShort((short) 0);
+        }
+        lastReport.limit(0);
+        if (releaseReport.position() == 1)
+            return false;
+        while (releaseReport.hasRemaining()) {
+            releaseReport.put((byte) 0);
+        }
+        releaseReport.flip();
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+package com.abbytech.razer.analog.protocol;
+
+import java.nio.ByteBuffer;
+
+//source of raw analog reports in the keyboard's wire format
+public interface ReportSource {
+    void openDevice();
+    void closeDevice();
+    boolean isDeviceOpen();
+    //blocks until the next report; returns null once the source is closed or exhausted.
+    //the returned buffer is only valid until the next call
+    ByteBuffer readHIDData();
+}
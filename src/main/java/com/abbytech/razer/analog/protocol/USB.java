@@ -1,75 +1,197 @@
 package com.abbytech.razer.analog.protocol;
 
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
 import lombok.Getter;
 import org.usb4java.*;
 
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.function.Consumer;
 
 import static com.abbytech.razer.analog.protocol.Constants.*;
 
-public class USB {
+//every source has its own libusb context, so the events of its transfers and hotplug callbacks are only ever handled
+//by its own threads (the AsyncHIDReader event thread, or the HotplugArrivalMonitor while the board is away), never
+//by another board's. the context lives while the device is open, a known device is held or a monitor waits on it
+public class USB implements BoardReportSource {
+    private Context context; //null while unused; guarded by this
+    private int contextUsers;
     private DeviceHandle deviceHandle;
     private final ByteBuffer commandByteBuffer = ByteBuffer.allocateDirect(COMMAND_LENGTH);
-    private final ByteBuffer hidDataBuffer = ByteBuffer.allocateDirect(HID_DATA_LENGTH);
-    private final IntBuffer hidInterruptResult = IntBuffer.allocate(1);
+    private volatile AsyncHIDReader hidReader;
     @Getter
-    private boolean deviceOpen = false;
+    private volatile boolean deviceOpen = false;
     private final short productId;
-    static {
-        init();
-    }
+    private final String deviceId; //bus-port path of the board to open; null opens the first one found
+    private Device knownDevice; //referenced device of context to open without scanning the bus; guarded by this
 
     public USB(short productId) {
+        this(productId, null);
+    }
+
+    public USB(short productId, String deviceId) {
         this.productId = productId;
+        this.deviceId = deviceId;
+    }
+
+    //one source per connected board, identified by bus-port path (e.g. "3-2.1"). devices cannot move between
+    //contexts, so each source finds its board once in its own and holds it; opening it then does not scan again
+    public static List<USB> findAll(short productId) {
+        Context scanContext = new Context();
+        init(scanContext);
+        List<String> deviceIds = new ArrayList<>();
+        try {
+            forEachMatchingDevice(scanContext, VENDOR_RAZER, productId, device -> deviceIds.add(getDeviceId(device)));
+        } finally {
+            LibUsb.exit(scanContext);
+        }
+        List<USB> sources = new ArrayList<>();
+        for (String id : deviceIds) {
+            USB source = new USB(productId, id);
+            source.holdDevice();
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    //finds the board in this source's context and keeps it for the next openDevice()
+    private void holdDevice() {
+        Context context = acquireContext();
+        try {
+            forEachMatchingDevice(context, VENDOR_RAZER, productId, this::offerDevice);
+        } finally {
+            releaseContext();
+        }
+    }
+
+    private synchronized Context acquireContext() {
+        if (contextUsers == 0) {
+            Context created = new Context();
+            init(created);
+            context = created;
+        }
+        contextUsers++;
+        return context;
+    }
+
+    synchronized void releaseContext() {
+        if (--contextUsers == 0) {
+            LibUsb.exit(context);
+            context = null;
+        }
+    }
+
+    @Override
+    public String getDeviceId() {
+        return deviceId;
     }
 
-    private static void init() {
-        int result = LibUsb.init(null);
+    private static void init(Context context) {
+        int result = LibUsb.init(context);
         if (result != LibUsb.SUCCESS) throw new LibUsbException("Unable to initialize libusb.", result);
     }
 
+    @Override
     public void openDevice() throws LibUsbException {
         if (deviceOpen) {
             throw new IllegalStateException("device already open");
         }
-        Device device = findDevice(VENDOR_RAZER, productId);
-        deviceHandle = claimDevice(device);
+        Context context = acquireContext();
+        try {
+            Device device = takeKnownDevice();
+            boolean known = device != null;
+            if (device == null)
+                device = findDevice(context, VENDOR_RAZER, productId);
+            try {
+                deviceHandle = claimDevice(device);
+            } finally {
+                LibUsb.unrefDevice(device);
+                if (known)
+                    releaseContext(); //held for the known device
+            }
+        } catch (RuntimeException e) {
+            releaseContext();
+            throw e;
+        }
         sendCommand(deviceHandle, setDriverDeviceMode);
+        hidReader = new AsyncHIDReader(context, deviceHandle);
+        hidReader.start();
         deviceOpen = true;
-        System.out.println("device opened");
+        System.out.println(deviceId == null ? "device opened" : "device " + deviceId + " opened");
+    }
+
+    //hands over a device (e.g. from a hotplug arrival) for the next openDevice(); false when it is not this board
+    boolean offerDevice(Device device) {
+        if (deviceId != null && !deviceId.equals(getDeviceId(device)))
+            return false;
+        synchronized (this) {
+            if (knownDevice != null)
+                LibUsb.unrefDevice(knownDevice);
+            else
+                acquireContext(); //the device belongs to it
+            knownDevice = LibUsb.refDevice(device);
+        }
+        return true;
     }
 
+    private synchronized Device takeKnownDevice() {
+        Device device = knownDevice;
+        knownDevice = null;
+        return device;
+    }
+
+    //waits for this board to be plugged back in: libusb hotplug where supported, otherwise a timed poll
+    @Override
+    public ArrivalMonitor newArrivalMonitor() {
+        if (LibUsb.hasCapability(LibUsb.CAP_HAS_HOTPLUG))
+            return new HotplugArrivalMonitor(this, acquireContext(), VENDOR_RAZER, productId);
+        return ArrivalMonitor.polling();
+    }
+
+    @Override
     public void closeDevice() throws LibUsbException {
         if (!deviceOpen) {
             throw new IllegalStateException("device not open");
         }
         System.out.println("closing device");
-        sendCommand(deviceHandle, setNormalDeviceMode);
-        releaseDevice(deviceHandle);
         deviceOpen = false;
+        hidReader.stop();
+        if (hidReader.getError() == LibUsb.ERROR_NO_DEVICE) {
+            //unplugged; nothing left to reset or release
+            LibUsb.close(deviceHandle);
+        } else {
+            sendCommand(deviceHandle, setNormalDeviceMode);
+            releaseDevice(deviceHandle);
+        }
+        releaseContext();
     }
 
+    @Override
     public ByteBuffer readHIDData() {
-        if (!deviceOpen) {
+        AsyncHIDReader reader = hidReader;
+        if (reader == null) {
             throw new IllegalStateException("attempt to read closed device");
         }
-        hidDataBuffer.clear();
-        hidInterruptResult.clear();
-        int result = LibUsb.interruptTransfer(deviceHandle, ENDPOINT_IN_ANALOG, hidDataBuffer, hidInterruptResult, 0);
-        checkResult(result, true);
-        return hidDataBuffer;
+        ByteBuffer report = reader.read();
+        if (report == null) {
+            checkResult(reader.getError(), true);
+        } else if (PipelineMetrics.ENABLED) {
+            PipelineMetrics.record(PipelineMetrics.Stage.USB_READ, reader.getLastCompletionTime());
+        }
+        return report;
     }
 
 
     private DeviceHandle claimDevice(Device device) {
         deviceHandle = openDevice(device);
-        claimInterface(Constants.interfaceNumber);
-        claimInterface(1);
-        claimInterface(3);
+        try {
+            claimInterface(Constants.interfaceNumber);
+            claimInterface(1);
+            claimInterface(3);
+        } catch (LibUsbException e) {
+            LibUsb.close(deviceHandle);
+            throw e;
+        }
         return deviceHandle;
     }
 
@@ -94,6 +216,8 @@ public class USB {
 
     private void checkResult(int result, boolean shouldThrow) {
         if (result != LibUsb.SUCCESS && result != COMMAND_LENGTH) {
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.countUsbError();
             if (shouldThrow) {
                 throw new LibUsbException(result);
             } else {
@@ -105,27 +229,53 @@ public class USB {
         }
     }
 
-    private Device findDevice(short vendorId, short productId) {
-        // Read the USB device list
-        DeviceList list = new DeviceList();
-        int result = LibUsb.getDeviceList(null, list);
-        if (result < 0) throw new LibUsbException("Unable to get device list", result);
-        List<Device> matchingDevices = StreamSupport.stream(list.spliterator(), false)
-                .filter(device -> {
-                    DeviceDescriptor descriptor = new DeviceDescriptor();
-                    int deviceDescriptorResult = LibUsb.getDeviceDescriptor(device, descriptor);
-                    if (deviceDescriptorResult != LibUsb.SUCCESS)
-                        throw new LibUsbException("Unable to read device descriptor", deviceDescriptorResult);
-                    return (descriptor.idVendor() == vendorId && descriptor.idProduct() == productId);
-                }).collect(Collectors.toList());
-
-        LibUsb.freeDeviceList(list, true);
+    private Device findDevice(Context context, short vendorId, short productId) {
+        List<Device> matchingDevices = new ArrayList<>();
+        forEachMatchingDevice(context, vendorId, productId, device -> {
+            if (deviceId == null || deviceId.equals(getDeviceId(device)))
+                matchingDevices.add(LibUsb.refDevice(device));
+        });
+        if (matchingDevices.isEmpty()) {
+            throw new LibUsbException(deviceId == null ? "no device found" : "device " + deviceId + " not found", LibUsb.ERROR_NO_DEVICE);
+        }
         if (matchingDevices.size() > 1) {
             System.out.println("found more than one device; defaulting to first one found");
         }
+        for (int i = 1; i < matchingDevices.size(); i++) {
+            LibUsb.unrefDevice(matchingDevices.get(i));
+        }
         return matchingDevices.getFirst();
     }
 
+    private static void forEachMatchingDevice(Context context, short vendorId, short productId, Consumer<Device> consumer) {
+        // Read the USB device list
+        DeviceList list = new DeviceList();
+        int result = LibUsb.getDeviceList(context, list);
+        if (result < 0) throw new LibUsbException("Unable to get device list", result);
+        try {
+            for (Device device : list) {
+                DeviceDescriptor descriptor = new DeviceDescriptor();
+                int deviceDescriptorResult = LibUsb.getDeviceDescriptor(device, descriptor);
+                if (deviceDescriptorResult != LibUsb.SUCCESS)
+                    throw new LibUsbException("Unable to read device descriptor", deviceDescriptorResult);
+                if (descriptor.idVendor() == vendorId && descriptor.idProduct() == productId)
+                    consumer.accept(device);
+            }
+        } finally {
+            LibUsb.freeDeviceList(list, true);
+        }
+    }
+
+    static String getDeviceId(Device device) {
+        ByteBuffer path = ByteBuffer.allocateDirect(8);
+        int length = LibUsb.getPortNumbers(device, path);
+        StringBuilder deviceId = new StringBuilder().append(LibUsb.getBusNumber(device));
+        for (int i = 0; i < length; i++) {
+            deviceId.append(i == 0 ? '-' : '.').append(path.get(i) & 0xFF);
+        }
+        return deviceId.toString();
+    }
+
     public void sendCommand(DeviceHandle handle, byte[] mode) {
         commandByteBuffer.clear();
         commandByteBuffer.put(mode);
@@ -148,7 +298,7 @@ public class USB {
 
     private void attachDriver(int interfaceNumber) {
         int result = LibUsb.attachKernelDriver(deviceHandle, interfaceNumber);
-        if (result != LibUsb.SUCCESS && result != LibUsb.ERROR_BUSY && result != LibUsb.ERROR_NOT_FOUND)
+        if (result != LibUsb.SUCCESS && result != LibUsb.ERROR_BUSY && result != LibUsb.ERROR_NOT_FOUND && result != LibUsb.ERROR_NO_DEVICE)
             throw new LibUsbException("Unable to re-attach kernel driver", result);
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.abbytech.razer.analog.util;
+
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+
+//direct mapped libc calls; assumes an LP64 linux target (long == size_t == unsigned long)
+public final class LibC {
+    public static final int O_WRONLY = 1;
+    public static final int O_RDWR = 2;
+    public static final int O_NONBLOCK = 0x800;
+    public static final int SCHED_OTHER = 0;
+    public static final int SCHED_FIFO = 1;
+    public static final int SCHED_RR = 2;
+    public static final int PRIO_PROCESS = 0;
+    public static final int EPERM = 1;
+    public static final int EACCES = 13;
+
+    static {
+        Native.register("c");
+    }
+
+    private LibC() {
+    }
+
+    public static native int open(String path, int flags);
+
+    public static native int close(int fd);
+
+    public static native int ioctl(int fd, long request, int value);
+
+    public static native int ioctl(int fd, long request, ByteBuffer argument);
+
+    public static native long write(int fd, ByteBuffer buffer, long count);
+
+    //scheduling calls below take pid 0 (PRIO_PROCESS who 0), which on linux is the calling thread, not the process
+    public static native int sched_setscheduler(int pid, int policy, ByteBuffer param);
+
+    public static native int sched_getscheduler(int pid);
+
+    public static native int sched_getparam(int pid, ByteBuffer param);
+
+    public static native int sched_setaffinity(int pid, long cpusetsize, ByteBuffer mask);
+
+    public static native int sched_getaffinity(int pid, long cpusetsize, ByteBuffer mask);
+
+    public static native int setpriority(int which, int who, int prio);
+
+    public static native int getpriority(int which, int who);
+
+    public static native int sched_getcpu();
+}
@@ -0,0 +1,151 @@
+package com.abbytech.razer.analog.util;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+//preallocated single-producer/single-consumer ring of reusable slots. the producer fills the slot returned by
+//claim()/tryClaim() and publish()es it; the consumer's slot from take() stays valid until its next take().
+//with coalesce enabled a consumer that fell behind skips straight to the newest published slot
+public class SpscRing<T> {
+    public enum WaitStrategy {
+        BUSY_SPIN, //lowest latency, burns a core
+        YIELD,
+        PARK //sleeps until signalled by the other side
+    }
+
+    private final T[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final boolean coalesce;
+    private volatile long published;
+    private volatile long consumed;
+    private volatile boolean closed;
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+    private boolean holding; //consumer side only
+    private long coalesced; //consumer side only
+
+    @SuppressWarnings("unchecked")
+    public SpscRing(int capacity, Supplier<T> slotFactory, WaitStrategy waitStrategy, boolean coalesce) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = (T[]) new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.coalesce = coalesce;
+    }
+
+    //next free slot, or null when the ring is full
+    public T tryClaim() {
+        long sequence = published;
+        if (sequence - consumed >= slots.length)
+            return null;
+        return slots[(int) (sequence & mask)];
+    }
+
+    //next free slot, waiting for the consumer when the ring is full; null once closed
+    public T claim() {
+        long sequence = published;
+        while (sequence - consumed >= slots.length) {
+            if (closed)
+                return null;
+            switch (waitStrategy) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELD -> Thread.yield();
+                case PARK -> {
+                    waitingProducer = Thread.currentThread();
+                    if (sequence - consumed >= slots.length && !closed)
+                        LockSupport.park(this);
+                    waitingProducer = null;
+                }
+            }
+        }
+        return slots[(int) (sequence & mask)];
+    }
+
+    public void publish() {
+        published = published + 1;
+        unpark(waitingConsumer);
+    }
+
+    //next published slot, waiting when the ring is empty; null once closed and drained
+    public T take() {
+        release();
+        long sequence = consumed;
+        while (published <= sequence) {
+            if (closed && published <= sequence)
+                return null;
+            switch (waitStrategy) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELD -> Thread.yield();
+                case PARK -> {
+                    waitingConsumer = Thread.currentThread();
+                    if (published <= sequence && !closed)
+                        LockSupport.park(this);
+                    waitingConsumer = null;
+                }
+            }
+        }
+        return next(sequence);
+    }
+
+    //next published slot without waiting; null when nothing is published. for consumers polling several rings
+    public T poll() {
+        release();
+        long sequence = consumed;
+        if (published <= sequence)
+            return null;
+        return next(sequence);
+    }
+
+    //true when a slot is published and not yet taken; use with isClosed() to detect a drained ring
+    public boolean hasNext() {
+        return published > consumed + (holding ? 1 : 0);
+    }
+
+    private void release() {
+        if (holding) {
+            holding = false;
+            consumed = consumed + 1;
+            unpark(waitingProducer);
+        }
+    }
+
+    private T next(long sequence) {
+        if (coalesce) {
+            long latest = published - 1;
+            if (latest > sequence) {
+                coalesced += latest - sequence;
+                sequence = latest;
+                consumed = sequence;
+                unpark(waitingProducer);
+            }
+        }
+        holding = true;
+        return slots[(int) (sequence & mask)];
+    }
+
+    public void close() {
+        closed = true;
+        unpark(waitingConsumer);
+        unpark(waitingProducer);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    //slots skipped by the consumer because a newer one was already published
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+}
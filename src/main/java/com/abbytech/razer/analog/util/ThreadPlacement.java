@@ -0,0 +1,161 @@
+package com.abbytech.razer.analog.util;
+
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+//optional low latency placement of the input threads: a real-time policy or nice level (-Drazer.sched=fifo|rr|nice)
+//and a cpu set per thread role (-Drazer.cpus.<role>=2,3 or 2-3, -Drazer.cpus for every role). what is not permitted,
+//usually for lack of CAP_SYS_NICE or RLIMIT_RTPRIO, falls back to the next weaker setting instead of failing.
+//the placement is read back from the kernel and logged, so the log shows what actually applies
+public final class ThreadPlacement {
+    private static final int CPU_SET_BYTES = 128; //glibc cpu_set_t, 1024 cpus
+    private static final int SCHED_RESET_ON_FORK = 0x40000000;
+    private static final int DEFAULT_PRIORITY = 50;
+    private static final int DEFAULT_NICE = -10;
+
+    public enum Role {
+        READER, //reads and decodes reports; also emits when there is no reader thread (see Keyboard)
+        EMITTER, //handles frames taken from the reader rings
+        USB, //libusb event thread completing the transfers
+        PACER //fixed rate output tick
+    }
+
+    public enum Policy {
+        NORMAL,
+        NICE,
+        RR,
+        FIFO
+    }
+
+    private ThreadPlacement() {
+    }
+
+    //places the calling thread as configured for its role; does nothing when neither a policy nor cpus are set.
+    //never throws, a failed placement leaves the thread as it was
+    public static void apply(Role role) {
+        String sched = System.getProperty("razer.sched");
+        String cpus = System.getProperty("razer.cpus." + role.name().toLowerCase(Locale.ROOT), System.getProperty("razer.cpus"));
+        if (sched == null && cpus == null)
+            return;
+        String thread = Thread.currentThread().getName();
+        try {
+            Policy policy = sched != null ? Policy.valueOf(sched.toUpperCase(Locale.ROOT)) : Policy.NORMAL;
+            String placement = place(policy, Integer.getInteger("razer.sched.priority", DEFAULT_PRIORITY),
+                    Integer.getInteger("razer.sched.nice", DEFAULT_NICE), cpus != null ? parseCpus(cpus) : null);
+            System.out.printf("thread %s (%s): %s%n", thread, role.name().toLowerCase(Locale.ROOT), placement);
+        } catch (RuntimeException | LinkageError e) {
+            System.err.printf("thread %s not placed: %s%n", thread, e.getMessage());
+        }
+    }
+
+    //applies the policy (priority for FIFO/RR, nice for NICE and as the fallback) and, unless null, the cpu set to the
+    //calling thread; returns the placement read back, with what could not be applied
+    public static String place(Policy policy, int priority, int nice, BitSet cpus) {
+        if ((policy == Policy.FIFO || policy == Policy.RR) && (priority < 1 || priority > 99)) {
+            throw new IllegalArgumentException("real-time priority out of range (1-99): " + priority);
+        }
+        if (nice < -20 || nice > 19) {
+            throw new IllegalArgumentException("nice out of range (-20-19): " + nice);
+        }
+        List<String> notes = new ArrayList<>();
+        if (cpus != null) {
+            if (LibC.sched_setaffinity(0, CPU_SET_BYTES, toMask(cpus)) != 0)
+                notes.add(String.format("cpus %s %s", cpus, failure(Native.getLastError())));
+            else if (!cpus.equals(getCpus()))
+                notes.add(String.format("cpus %s requested", cpus)); //narrowed by a cpuset cgroup, for one
+        }
+        switch (policy) {
+            case FIFO, RR -> {
+                int schedPolicy = policy == Policy.FIFO ? LibC.SCHED_FIFO : LibC.SCHED_RR;
+                ByteBuffer param = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+                param.putInt(0, priority);
+                if (LibC.sched_setscheduler(0, schedPolicy, param) != 0) {
+                    notes.add(String.format("%s %s, nice %d instead", policyName(schedPolicy), failure(Native.getLastError()), nice));
+                    setNice(nice, notes);
+                }
+            }
+            case NICE -> setNice(nice, notes);
+            case NORMAL -> {
+            }
+        }
+        return describe() + (notes.isEmpty() ? "" : "; " + String.join("; ", notes));
+    }
+
+    private static void setNice(int nice, List<String> notes) {
+        if (LibC.setpriority(LibC.PRIO_PROCESS, 0, nice) != 0)
+            notes.add(String.format("nice %d %s", nice, failure(Native.getLastError())));
+    }
+
+    //missing privilege (EPERM, or EACCES for a lower nice) told apart from other errors such as an invalid cpu set
+    private static String failure(int errno) {
+        return String.format(errno == LibC.EPERM || errno == LibC.EACCES ? "not permitted (errno %d)" : "failed (errno %d)", errno);
+    }
+
+    //policy, priority or nice, allowed cpus and the cpu currently running the calling thread
+    public static String describe() {
+        int policy = LibC.sched_getscheduler(0) & ~SCHED_RESET_ON_FORK;
+        String scheduling;
+        if (policy == LibC.SCHED_FIFO || policy == LibC.SCHED_RR) {
+            ByteBuffer param = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+            LibC.sched_getparam(0, param);
+            scheduling = policyName(policy) + " priority " + param.getInt(0);
+        } else {
+            scheduling = policyName(policy) + " nice " + LibC.getpriority(LibC.PRIO_PROCESS, 0);
+        }
+        return String.format("%s, cpus %s, on cpu %d", scheduling, getCpus(), LibC.sched_getcpu());
+    }
+
+    private static String policyName(int policy) {
+        return switch (policy) {
+            case LibC.SCHED_OTHER -> "SCHED_OTHER";
+            case LibC.SCHED_FIFO -> "SCHED_FIFO";
+            case LibC.SCHED_RR -> "SCHED_RR";
+            default -> "policy " + policy;
+        };
+    }
+
+    private static BitSet getCpus() {
+        ByteBuffer mask = ByteBuffer.allocateDirect(CPU_SET_BYTES).order(ByteOrder.nativeOrder());
+        if (LibC.sched_getaffinity(0, CPU_SET_BYTES, mask) != 0)
+            return new BitSet();
+        long[] words = new long[CPU_SET_BYTES / Long.BYTES];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = mask.getLong(i * Long.BYTES);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    //cpu_set_t is an array of unsigned longs, cpu n being bit n % 64 of word n / 64
+    private static ByteBuffer toMask(BitSet cpus) {
+        if (cpus.isEmpty() || cpus.length() > CPU_SET_BYTES * 8) {
+            throw new IllegalArgumentException("cpus out of range: " + cpus);
+        }
+        ByteBuffer mask = ByteBuffer.allocateDirect(CPU_SET_BYTES).order(ByteOrder.nativeOrder());
+        long[] words = cpus.toLongArray();
+        for (int i = 0; i < words.length; i++) {
+            mask.putLong(i * Long.BYTES, words[i]);
+        }
+        return mask;
+    }
+
+    //"2", "2,3", "4-7" or combinations like "0,4-5"
+    public static BitSet parseCpus(String cpus) {
+        BitSet set = new BitSet();
+        for (String part : cpus.split(",")) {
+            String[] range = part.strip().split("-", 2);
+            int from = Integer.parseInt(range[0].strip());
+            int to = range.length > 1 ? Integer.parseInt(range[1].strip()) : from;
+            if (from < 0 || to < from) {
+                throw new IllegalArgumentException("invalid cpu list: " + cpus);
+            }
+            set.set(from, to + 1);
+        }
+        return set;
+    }
+}
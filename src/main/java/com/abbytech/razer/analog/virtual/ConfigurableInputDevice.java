@@ -1,129 +1,542 @@
 package com.abbytech.razer.analog.virtual;
 
 import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.Layout;
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
 import uk.co.bithatch.linuxio.EventCode;
-import uk.co.bithatch.linuxio.InputDevice;
 
 import java.io.IOException;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
 
 public class ConfigurableInputDevice implements GenericDevice {
-    private final InputDevice wrappedInputDevice;
-    private final Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping;
-    private final List<EventCode> triggerAxes;
-    private final int defaultActuationPoint;
-
-    public ConfigurableInputDevice(InputDevice wrappedInputDevice, Map<EventCode,
-                                           List<InputDeviceConfig.OutputMapping>> inputOutputMapping,
-                                   int defaultActuationPoint) {
-        this.wrappedInputDevice = wrappedInputDevice;
-        this.inputOutputMapping = inputOutputMapping;
-        this.defaultActuationPoint = defaultActuationPoint;
-        Set<EventCode> outputCapabilities = inputOutputMapping
-                .values()
-                .stream()
-                .flatMap(Collection::stream)
-                .map(InputDeviceConfig.OutputMapping::getEventCode)
-                .collect(Collectors.toSet());
-
-        wrappedInputDevice.getCapabilities().addAll(outputCapabilities);
-
-        triggerAxes = inputOutputMapping.values().stream().flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(InputDeviceConfig.OutputMapping::getEventCode))
-                .values()
-                .stream()
-                .filter(outputMappings ->
-                        outputMappings.stream().allMatch(InputDeviceConfig.OutputMapping::isPositive)
-                                ||
-                                outputMappings.stream().noneMatch(InputDeviceConfig.OutputMapping::isPositive))
-                .map(List::getFirst)
-                .map(InputDeviceConfig.OutputMapping::getEventCode)
-                .toList();
+    private static final int DEFAULT_RELATIVE_RATE = 1000; //pacer rate for relative outputs when no output rate is set
+    private static final long MAX_TICK_NANOS = 100_000_000; //motion integrated per tick at most, e.g. after a stall
+    private static final long PICO = 1_000_000_000_000L; //velocity (1/1000 counts per second) * nanoseconds per count
+
+    private final Layout layout;
+    private final List<String> deviceIds; //key namespaces, see MappingTable
+    private final Function<InputDeviceConfig.OutputDeviceConfig, EventSink> sinkFactory; //null when devices cannot be created
+    private final Map<DeviceKey, EventSink> sinks = new HashMap<>(); //virtual devices by index, identity and outputs
+    private final AtomicReference<Mapping> pending = new AtomicReference<>();
+    private volatile Mapping mapping; //written by the handle() thread only
+    private volatile List<Mapping> retained = List.of(); //see retain()
+    private Mapping replaced; //last one swapped out, its outputs may still be released; under emitLock
+    private final ReentrantLock emitLock = new ReentrantLock(); //paced mode: pacer tick against swap/open/close
+    private int outputRate;
+    private OutputPacer pacer;
+    private Mapping emitted; //paced mode: mapping of the last tick, under emitLock
+    private long emittedVersion;
+    private long lastTick; //pacer thread
+
+    public ConfigurableInputDevice(EventSink wrappedInputDevice, InputDeviceConfig inputDeviceConfig, Layout layout) {
+        this.layout = layout;
+        this.deviceIds = List.of();
+        this.sinkFactory = null;
+        MappingTable table = new MappingTable(inputDeviceConfig, layout);
+        addCapabilities(table, 0, wrappedInputDevice);
+        sinks.put(DeviceKey.of(0, MappingTable.outputDevices(inputDeviceConfig).getFirst(), table), wrappedInputDevice);
+        this.mapping = new Mapping(inputDeviceConfig, table, devices(inputDeviceConfig, table));
+    }
+
+    //sinkFactory creates a virtual device (see MappingTable.outputDevices); it is called again by compile() when the
+    //outputs or the identity of a device change
+    public ConfigurableInputDevice(Function<InputDeviceConfig.OutputDeviceConfig, EventSink> sinkFactory, InputDeviceConfig inputDeviceConfig, Layout layout, List<String> deviceIds) {
+        this.layout = layout;
+        this.deviceIds = List.copyOf(deviceIds);
+        this.sinkFactory = sinkFactory;
+        MappingTable table = new MappingTable(inputDeviceConfig, layout, this.deviceIds);
+        this.mapping = new Mapping(inputDeviceConfig, table, devices(inputDeviceConfig, table));
+    }
+
+    //compiles a config into a mapping activate() can switch to any number of times, e.g. one per profile. mappings
+    //with the same device identity and outputs at the same index share one virtual device, which is only created
+    //for a new combination and destroyed once no mapping uses it (see retain()). throws IllegalArgumentException for
+    //configs that do not compile
+    public Mapping compile(InputDeviceConfig inputDeviceConfig) {
+        MappingTable table = new MappingTable(inputDeviceConfig, layout, deviceIds);
+        return new Mapping(inputDeviceConfig, table, devices(inputDeviceConfig, table));
+    }
+
+    private EventSink[] devices(InputDeviceConfig inputDeviceConfig, MappingTable table) {
+        List<InputDeviceConfig.OutputDeviceConfig> outputDevices = MappingTable.outputDevices(inputDeviceConfig);
+        EventSink[] devices = new EventSink[outputDevices.size()];
+        synchronized (sinks) {
+            for (int device = 0; device < devices.length; device++) {
+                DeviceKey key = DeviceKey.of(device, outputDevices.get(device), table);
+                EventSink sink = sinks.get(key);
+                if (sink == null) {
+                    if (sinkFactory == null) {
+                        throw new IllegalArgumentException("output capabilities changed but the virtual device cannot be rebuilt");
+                    }
+                    sink = sinkFactory.apply(outputDevices.get(device));
+                    addCapabilities(table, device, sink);
+                    sinks.put(key, sink);
+                }
+                devices[device] = sink;
+            }
+        }
+        return devices;
+    }
+
+    //hands the mapping to the thread calling handle(), which switches to it before the next report, returning what
+    //the current one holds to rest. devices the current mapping does not have are opened here if the current ones are open
+    public synchronized void activate(Mapping next) throws IOException {
+        if (isOpen())
+            open(next.devices);
+        pending.set(next);
+    }
+
+    //the mappings whose virtual devices live as long as this device, e.g. every profile's: they are opened with it
+    //and stay open across switches, so a switch never creates or destroys a device. devices that neither these nor
+    //the active or pending mapping use any more, e.g. after a reload changed a profile's outputs, are destroyed here;
+    //those of the active one once it is switched away from
+    public synchronized void retain(List<Mapping> mappings) throws IOException {
+        emitLock.lock();
+        try {
+            retained = List.copyOf(mappings);
+            if (isOpen()) {
+                for (Mapping retainedMapping : retained) {
+                    open(retainedMapping.devices);
+                }
+            }
+            List<EventSink> unused = new ArrayList<>();
+            synchronized (sinks) {
+                for (EventSink sink : sinks.values()) {
+                    if (!isUsed(sink, mapping, pending.get(), replaced))
+                        unused.add(sink);
+                }
+            }
+            for (EventSink sink : unused) {
+                destroy(sink);
+            }
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    //compiles the config on the calling thread and activates it
+    public void reload(InputDeviceConfig inputDeviceConfig) throws IOException {
+        activate(compile(inputDeviceConfig));
+    }
+
+    //the mapping handle() currently uses
+    public Mapping getMapping() {
+        return mapping;
+    }
+
+    //0 (default) emits one frame per report on the handle() thread. otherwise handle() only maps into the latest
+    //state and a dedicated thread samples it at this rate (Hz), emitting at most one coalesced frame per tick.
+    //relative (REL_) outputs always run paced, at 1000 Hz unless set. set before open()
+    public void setOutputRate(int outputRate) {
+        if (outputRate < 0) {
+            throw new IllegalArgumentException("output rate out of range: " + outputRate);
+        }
+        this.outputRate = outputRate;
+    }
+
+    private static void addCapabilities(MappingTable table, int device, EventSink sink) {
+        for (int slot = 0; slot < table.getSlotCount(); slot++) {
+            if (table.getSlotDevice(slot) == device)
+                sink.addCapability(table.getSlotEventCode(slot));
+        }
+    }
+
+    private static void open(EventSink[] devices) throws IOException {
+        for (EventSink device : devices) {
+            if (!device.isOpen())
+                device.open();
+        }
+    }
+
+    private boolean isUsed(EventSink sink, Mapping... mappings) {
+        for (Mapping retainedMapping : retained) {
+            if (contains(retainedMapping.devices, sink))
+                return true;
+        }
+        for (Mapping used : mappings) {
+            if (used != null && contains(used.devices, sink))
+                return true;
+        }
+        return false;
+    }
+
+    //closing a virtual device destroys it; a later compile() creates a new one for its outputs
+    private void destroy(EventSink sink) throws IOException {
+        synchronized (sinks) {
+            sinks.values().remove(sink);
+        }
+        if (sink.isOpen())
+            sink.close();
+    }
+
+    private static boolean contains(EventSink[] devices, EventSink sink) {
+        for (EventSink device : devices) {
+            if (device == sink)
+                return true;
+        }
+        return false;
     }
 
     @Override
     public boolean isOpen() {
-        return wrappedInputDevice.isOpen();
+        return mapping.devices[0].isOpen();
     }
 
     @Override
     public void close() throws IOException {
-        wrappedInputDevice.close();
+        if (pacer != null) {
+            pacer.close();
+            System.out.printf("output pacer: %s%n", pacer);
+            pacer = null;
+        }
+        swap();
+        synchronized (sinks) {
+            for (EventSink device : sinks.values()) {
+                if (device.isOpen())
+                    device.close();
+            }
+        }
     }
 
     @Override
-    public void handle(List<InputDevice.Event> events) {
-        List<InputDevice.Event> mappedEvents = mapToInputDeviceEvents(events);
-        mappedEvents.forEach(inputDeviceEvent -> {
-            try {
-                wrappedInputDevice.emit(inputDeviceEvent, false);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    public void handle(HidFrame frame) {
+        Mapping previous = pending.get() != null ? activatePending() : null;
+        if (pacer != null) {
+            record(frame);
+            return;
+        }
+        Mapping mapping = this.mapping;
+        long start = PipelineMetrics.ENABLED ? System.nanoTime() : 0;
+        mapping.table.map(frame, mapping.outputFrame);
+        if (PipelineMetrics.ENABLED) {
+            PipelineMetrics.record(PipelineMetrics.Stage.MAPPING, start);
+            start = System.nanoTime();
+        }
+        try {
+            if (previous != null)
+                release(previous, mapping);
+            OutputFrame outputFrame = mapping.outputFrame;
+            for (int i = 0; i < outputFrame.size(); i++) {
+                int slot = outputFrame.getSlot(i);
+                int value = outputFrame.getValue(i);
+                int minDelta = mapping.table.isButtonSlot(slot) ? 0 : mapping.minAxisDelta;
+                if (mapping.outputStates.update(slot, value, minDelta, mapping.table.getRestValue(slot)))
+                    mapping.devices[mapping.table.getSlotDevice(slot)].queue(mapping.table.getSlotEventCode(slot), value);
             }
-        });
-        if (!mappedEvents.isEmpty()) {
-            try {
-                wrappedInputDevice.syn();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-    }
-
-    private List<InputDevice.Event> mapToInputDeviceEvents(List<InputDevice.Event> eventParts) {
-        return eventParts.stream().map(this::mapToInputEventGeneric).flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(InputDevice.Event::getCode))
-                .values()
-                .stream()
-                .map(events -> {
-                    InputDevice.Event event = events.stream().reduce(new InputDevice.Event(null, 0), (event1, event2) -> {
-                        int event1Value = event1.getValue();
-                        int event2Value = event2.getValue();
-                        int sum = event1Value + event2Value;
-
-                        return new InputDevice.Event(event1.getCode() != null ? event1.getCode() : event2.getCode(), sum);
-                    });
-                    return new InputDevice.Event(event.getCode(), Math.clamp(event.getValue(), Short.MIN_VALUE, Short.MAX_VALUE));
-                }).collect(Collectors.toList());
-    }
-
-    private List<InputDevice.Event> mapToInputEventGeneric(InputDevice.Event event) {
-        int inputValue = event.getValue();
-        int axisValue = inputValue / 2; //restrict to Short.MAX_VALUE; output values higher/lower than this seem to cause axes to go out of range
-        EventCode inputEventCode = event.getCode();
-
-        List<InputDeviceConfig.OutputMapping> outputMappings = inputOutputMapping.get(inputEventCode);
-
-        return outputMappings.stream().map(outputMapping -> {
-            EventCode outputEventCode = outputMapping.getEventCode();
-            int outputValue;
-            if (outputEventCode.isButton()) {
-                int actuationPoint = outputMapping.getActuationPoint() != 0 ? outputMapping.getActuationPoint() : defaultActuationPoint;
-                outputValue = inputValue > actuationPoint ? 1 : 0;
-                return new InputDevice.Event(outputEventCode, outputValue);
-            } else if (!outputEventCode.isKey())/*implied isAxis*/ {
-                boolean positive = outputMapping.isPositive();
-                if (triggerAxes.contains(outputEventCode)) {
-                    int triggerAxisValue = inputValue - Short.MAX_VALUE;
-                    outputValue = positive ? triggerAxisValue : triggerAxisValue * -1;
-                } else {
-                    outputValue = positive ? axisValue : axisValue * -1;
+            //one frame per device with changes; the others write nothing
+            for (EventSink device : mapping.devices) {
+                device.syn();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.record(PipelineMetrics.Stage.EMIT, start);
+    }
+
+    //swaps in the pending mapping; returns the replaced one when per-report output has to release its outputs.
+    //a mapping with relative outputs switches to paced output
+    private Mapping activatePending() {
+        emitLock.lock();
+        try {
+            Mapping previous = swap();
+            if (pacer != null)
+                return null; //held outputs are released by the next tick
+            if (mapping.table.hasRelativeSlots() && isOpen()) {
+                emitted = previous;
+                startPacer();
+                return null;
+            }
+            return previous;
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    private void startPacer() {
+        lastTick = 0;
+        pacer = new OutputPacer(outputRate > 0 ? outputRate : DEFAULT_RELATIVE_RATE, this::tick, "gamepad-pacer");
+        pacer.start();
+    }
+
+    //paced mode: maps the frame into the latest state, which the pacer thread emits on its next tick
+    private void record(HidFrame frame) {
+        Mapping mapping = this.mapping;
+        long start = PipelineMetrics.ENABLED ? System.nanoTime() : 0;
+        OutputFrame outputFrame = mapping.outputFrame;
+        mapping.table.map(frame, outputFrame);
+        long stamp = mapping.latestLock.writeLock();
+        try {
+            for (int i = 0; i < outputFrame.size(); i++) {
+                int slot = outputFrame.getSlot(i);
+                mapping.latest[slot] = mapping.table.isRelativeSlot(slot) ? outputFrame.getSum(i) : outputFrame.getValue(i);
+            }
+            mapping.version++;
+        } finally {
+            mapping.latestLock.unlockWrite(stamp);
+        }
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.record(PipelineMetrics.Stage.MAPPING, start);
+    }
+
+    //pacer thread: emits the slots whose latest value changed since the last tick, and the motion of relative
+    //slots since the last tick, as a single frame
+    private void tick() {
+        emitLock.lock();
+        try {
+            Mapping mapping = this.mapping;
+            if (!isOpen())
+                return;
+            long now = System.nanoTime();
+            long elapsed = lastTick != 0 ? Math.min(now - lastTick, MAX_TICK_NANOS) : 0;
+            lastTick = now;
+            Mapping previous = emitted;
+            long version = mapping.sample();
+            if (previous == mapping && version == emittedVersion && !mapping.relative)
+                return;
+            long start = PipelineMetrics.ENABLED ? System.nanoTime() : 0;
+            emitted = mapping;
+            emittedVersion = version;
+            if (previous != null && previous != mapping)
+                releaseUnsampled(previous, mapping);
+            for (int slot = 0; slot < mapping.sampled.length; slot++) {
+                int value = mapping.sampled[slot];
+                if (value == StateCache.UNKNOWN)
+                    continue;
+                if (mapping.table.isRelativeSlot(slot)) {
+                    move(mapping, slot, value, elapsed);
+                    continue;
+                }
+                int minDelta = mapping.table.isButtonSlot(slot) ? 0 : mapping.minAxisDelta;
+                if (mapping.outputStates.update(slot, value, minDelta, mapping.table.getRestValue(slot)))
+                    mapping.devices[mapping.table.getSlotDevice(slot)].queue(mapping.table.getSlotEventCode(slot), value);
+            }
+            for (EventSink device : mapping.devices) {
+                device.syn();
+            }
+            if (PipelineMetrics.ENABLED)
+                PipelineMetrics.record(PipelineMetrics.Stage.EMIT, start);
+        } catch (IOException e) {
+            System.err.printf("paced output failed: %s%n", e.getMessage());
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    //integrates a velocity over the elapsed time; the sub-count remainder carries over to the next tick and is
+    //dropped once the velocity returns to 0
+    private static void move(Mapping mapping, int slot, int velocity, long elapsedNanos) throws IOException {
+        if (velocity == 0) {
+            mapping.remainders[slot] = 0;
+            return;
+        }
+        long motion = mapping.remainders[slot] + (long) velocity * elapsedNanos;
+        long counts = motion / PICO;
+        mapping.remainders[slot] = motion - counts * PICO;
+        if (counts != 0)
+            mapping.devices[mapping.table.getSlotDevice(slot)].queue(mapping.table.getSlotEventCode(slot), (int) counts);
+    }
+
+    //activates the pending mapping; returns the replaced one, whose outputs may still be held. its devices stay open
+    //unless no mapping uses them any more
+    private Mapping swap() {
+        Mapping next = pending.getAndSet(null);
+        if (next == null)
+            return null;
+        Mapping previous = mapping;
+        if (next == previous)
+            return null;
+        next.reset();
+        mapping = next;
+        replaced = previous;
+        boolean rebuilt = false;
+        try {
+            //destroying a device releases everything it held
+            boolean wasOpen = previous.devices[0].isOpen();
+            for (EventSink device : previous.devices) {
+                if (!isUsed(device, next, pending.get())) {
+                    destroy(device);
+                    rebuilt = true;
                 }
-            } else {
-                throw new IllegalArgumentException("mapping to key is unsupported");
             }
-            return new InputDevice.Event(outputEventCode, outputValue);
-        }).collect(Collectors.toList());
+            for (EventSink device : next.devices) {
+                if (wasOpen && !device.isOpen()) {
+                    device.open();
+                    rebuilt = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.println(rebuilt ? "mapping switched; virtual devices rebuilt" : "mapping switched");
+        return previous;
+    }
+
+    //returns outputs the previous mapping left pressed or deflected to rest, unless the new mapping drives them in this frame
+    private static void release(Mapping previous, Mapping current) throws IOException {
+        for (int slot = 0; slot < previous.table.getSlotCount(); slot++) {
+            int last = previous.outputStates.get(slot);
+            int rest = previous.table.getRestValue(slot);
+            EventSink device = previous.devices[previous.table.getSlotDevice(slot)];
+            if (last == StateCache.UNKNOWN || last == rest || !device.isOpen())
+                continue;
+            EventCode eventCode = previous.table.getSlotEventCode(slot);
+            if (!isWritten(current, device, eventCode))
+                device.queue(eventCode, rest);
+        }
+        synLeft(previous, current);
+    }
+
+    //paced counterpart of release(): the new mapping drives an output once it has sampled a value for it
+    private static void releaseUnsampled(Mapping previous, Mapping current) throws IOException {
+        for (int slot = 0; slot < previous.table.getSlotCount(); slot++) {
+            int last = previous.outputStates.get(slot);
+            int rest = previous.table.getRestValue(slot);
+            EventSink device = previous.devices[previous.table.getSlotDevice(slot)];
+            if (last == StateCache.UNKNOWN || last == rest || !device.isOpen())
+                continue;
+            EventCode eventCode = previous.table.getSlotEventCode(slot);
+            if (!isSampled(current, device, eventCode))
+                device.queue(eventCode, rest);
+        }
+        synLeft(previous, current);
+    }
+
+    //the current mapping syncs its own devices; the ones only the previous mapping wrote to are synced here
+    private static void synLeft(Mapping previous, Mapping current) throws IOException {
+        for (EventSink device : previous.devices) {
+            if (device.isOpen() && !contains(current.devices, device))
+                device.syn();
+        }
+    }
+
+    private static boolean isSampled(Mapping mapping, EventSink device, EventCode eventCode) {
+        for (int slot = 0; slot < mapping.sampled.length; slot++) {
+            if (mapping.sampled[slot] != StateCache.UNKNOWN && isOutput(mapping, slot, device, eventCode))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isWritten(Mapping mapping, EventSink device, EventCode eventCode) {
+        for (int i = 0; i < mapping.outputFrame.size(); i++) {
+            if (isOutput(mapping, mapping.outputFrame.getSlot(i), device, eventCode))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isOutput(Mapping mapping, int slot, EventSink device, EventCode eventCode) {
+        return mapping.table.getSlotEventCode(slot) == eventCode && mapping.devices[mapping.table.getSlotDevice(slot)] == device;
     }
 
     @Override
-    public boolean canHandle(EventCode eventCode) {
-        return inputOutputMapping.containsKey(eventCode);
+    public boolean canHandle(int key) {
+        return mapping.table.isMapped(key);
     }
 
     @Override
     public void open() throws IOException {
-        wrappedInputDevice.open();
+        emitLock.lock();
+        try {
+            swap();
+            mapping.outputStates.clear();
+            emitted = null;
+            synchronized (sinks) {
+                for (EventSink device : sinks.values()) {
+                    if (!device.isOpen())
+                        device.open();
+                }
+            }
+        } finally {
+            emitLock.unlock();
+        }
+        if (pacer == null && (outputRate > 0 || mapping.table.hasRelativeSlots()))
+            startPacer();
+    }
+
+    @Override
+    public StateCache getOutputStates() {
+        return mapping.outputStates;
+    }
+
+    private record DeviceKey(int device, String deviceName, int vendorId, int productId, Set<EventCode> outputs) {
+        private static DeviceKey of(int device, InputDeviceConfig.OutputDeviceConfig outputDevice, MappingTable table) {
+            return new DeviceKey(device, outputDevice.getDeviceName(), outputDevice.getVendorId(), outputDevice.getProductId(), table.getSlotEventCodes(device));
+        }
+    }
+
+    //one compiled config and the devices it writes to; swapped as a whole. immutable apart from the output state,
+    //which is reset whenever it becomes active again
+    public static final class Mapping {
+        private final MappingTable table;
+        private final OutputFrame outputFrame;
+        private final StateCache outputStates;
+        private final int minAxisDelta;
+        private final EventSink[] devices; //indexed by MappingTable.getSlotDevice
+        //paced mode: latest mapped value per slot (UNKNOWN until mapped), written by handle(), sampled by the pacer
+        private final int[] latest;
+        private final int[] sampled;
+        private final StampedLock latestLock = new StampedLock();
+        private long version;
+        private final boolean relative;
+        private final long[] remainders; //relative slots: motion not yet emitted, in PICO units of a count
+
+        private Mapping(InputDeviceConfig config, MappingTable table, EventSink[] devices) {
+            this.table = table;
+            this.outputFrame = new OutputFrame(table.getSlotCount());
+            this.outputStates = new StateCache(table.getSlotCount());
+            this.minAxisDelta = config.getMinAxisDelta();
+            this.devices = devices;
+            this.latest = new int[table.getSlotCount()];
+            this.sampled = new int[table.getSlotCount()];
+            Arrays.fill(latest, StateCache.UNKNOWN);
+            this.relative = table.hasRelativeSlots();
+            this.remainders = new long[table.getSlotCount()];
+        }
+
+        //routing bit of the (device namespaced) key, see MappingTable.isMapped
+        public boolean isMapped(int key) {
+            return table.isMapped(key);
+        }
+
+        //handle() thread, before the mapping becomes active: forget what it wrote while it was last active
+        private void reset() {
+            outputStates.clear();
+            long stamp = latestLock.writeLock();
+            try {
+                Arrays.fill(latest, StateCache.UNKNOWN);
+                version++;
+            } finally {
+                latestLock.unlockWrite(stamp);
+            }
+            Arrays.fill(remainders, 0);
+        }
+
+        //copies latest into sampled; an optimistic read, retried under the read lock when a frame was recorded meanwhile
+        private long sample() {
+            long stamp = latestLock.tryOptimisticRead();
+            long sampledVersion = version;
+            System.arraycopy(latest, 0, sampled, 0, latest.length);
+            if (latestLock.validate(stamp))
+                return sampledVersion;
+            stamp = latestLock.readLock();
+            try {
+                System.arraycopy(latest, 0, sampled, 0, latest.length);
+                return version;
+            } finally {
+                latestLock.unlockRead(stamp);
+            }
+        }
     }
 }
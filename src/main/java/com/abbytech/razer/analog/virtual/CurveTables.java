@@ -0,0 +1,108 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//compiles OutputMapping deadzones and response curves into 65536-entry lookup tables from raw travel to shaped
+//travel (both 0-65535, stored as unsigned short). mappings with identical deadzones and curves share one table;
+//a mapping without either gets the identity table, so its output is unchanged
+class CurveTables {
+    static final int SIZE = 0x10000;
+    private static final int MAX_VALUE = 0xFFFF;
+    private static final double DEFAULT_EXPONENT = 2;
+
+    private final Map<Key, short[]> tables = new HashMap<>();
+
+    short[] get(InputDeviceConfig.OutputMapping outputMapping) {
+        InputDeviceConfig.Curve curve = outputMapping.getCurve();
+        if (curve != null && (curve.getType() == null || curve.getType() == InputDeviceConfig.CurveType.LINEAR))
+            curve = null;
+        Key key = new Key(outputMapping.getInnerDeadzone(), outputMapping.getOuterDeadzone(), curve);
+        return tables.computeIfAbsent(key, CurveTables::compile);
+    }
+
+    int size() {
+        return tables.size();
+    }
+
+    private static short[] compile(Key key) {
+        validate(key.innerDeadzone, key.outerDeadzone, key.curve);
+        short[] table = new short[SIZE];
+        for (int input = 0; input < SIZE; input++) {
+            table[input] = (short) response(key.innerDeadzone, key.outerDeadzone, key.curve, input);
+        }
+        return table;
+    }
+
+    private static int response(int innerDeadzone, int outerDeadzone, InputDeviceConfig.Curve curve, int input) {
+        if (innerDeadzone == 0 && outerDeadzone == 0 && (curve == null || curve.getType() == InputDeviceConfig.CurveType.LINEAR))
+            return input;
+        int top = innerDeadzone;
+        int bottom = MAX_VALUE - outerDeadzone;
+        if (input <= top)
+            return 0;
+        if (input >= bottom)
+            return MAX_VALUE;
+        double travel = (double) (input - top) / (bottom - top);
+        return (int) Math.round(shape(curve, travel) * MAX_VALUE);
+    }
+
+    private static double shape(InputDeviceConfig.Curve curve, double x) {
+        if (curve == null || curve.getType() == null)
+            return x;
+        double exponent = curve.getExponent() != 0 ? curve.getExponent() : DEFAULT_EXPONENT;
+        return switch (curve.getType()) {
+            case LINEAR -> x;
+            case EXPONENTIAL -> Math.pow(x, exponent);
+            case S_CURVE -> {
+                double a = Math.pow(x, exponent);
+                yield a / (a + Math.pow(1 - x, exponent));
+            }
+            case POINTS -> interpolate(curve.getPoints(), x);
+        };
+    }
+
+    private static double interpolate(List<List<Double>> points, double x) {
+        if (x <= points.getFirst().get(0))
+            return points.getFirst().get(1);
+        for (int i = 1; i < points.size(); i++) {
+            List<Double> to = points.get(i);
+            if (x <= to.get(0)) {
+                List<Double> from = points.get(i - 1);
+                double span = to.get(0) - from.get(0);
+                return span == 0 ? to.get(1) : from.get(1) + (to.get(1) - from.get(1)) * (x - from.get(0)) / span;
+            }
+        }
+        return points.getLast().get(1);
+    }
+
+    private static void validate(int innerDeadzone, int outerDeadzone, InputDeviceConfig.Curve curve) {
+        if (innerDeadzone < 0 || outerDeadzone < 0 || innerDeadzone + outerDeadzone >= MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("invalid deadzones: inner %d, outer %d", innerDeadzone, outerDeadzone));
+        }
+        if (curve == null || curve.getType() == null)
+            return;
+        if (curve.getExponent() < 0) {
+            throw new IllegalArgumentException("curve exponent must be positive: " + curve.getExponent());
+        }
+        if (curve.getType() == InputDeviceConfig.CurveType.POINTS) {
+            List<List<Double>> points = curve.getPoints();
+            if (points == null || points.size() < 2) {
+                throw new IllegalArgumentException("POINTS curve needs at least two points");
+            }
+            double lastX = -1;
+            for (List<Double> point : points) {
+                if (point.size() != 2 || point.get(0) < lastX || point.get(0) > 1 || point.get(1) < 0 || point.get(1) > 1) {
+                    throw new IllegalArgumentException("POINTS curve needs [input, output] pairs between 0 and 1 with ascending inputs: " + points);
+                }
+                lastX = point.get(0);
+            }
+        }
+    }
+
+    private record Key(int innerDeadzone, int outerDeadzone, InputDeviceConfig.Curve curve) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.abbytech.razer.analog.virtual;
+
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+//output side of a virtual device: events are queued per frame and submitted together by syn()
+public interface EventSink extends Closeable {
+    void addCapability(EventCode... eventCodes);
+    boolean isOpen();
+    void open() throws IOException;
+    void queue(EventCode eventCode, int value) throws IOException;
+    void syn() throws IOException;
+}
@@ -1,15 +1,14 @@
 package com.abbytech.razer.analog.virtual;
 
-import uk.co.bithatch.linuxio.EventCode;
-import uk.co.bithatch.linuxio.InputDevice;
+import com.abbytech.razer.analog.hid.HidFrame;
 
 import java.io.IOException;
-import java.util.List;
 
 public interface GenericDevice {
     boolean isOpen();
     void close() throws IOException;
-    void handle(List<InputDevice.Event> events);
-    boolean canHandle(EventCode eventCode);
+    void handle(HidFrame frame);
+    boolean canHandle(int key); //HidFrame.getKey: key code qualified by device
     void open() throws IOException;
+    StateCache getOutputStates();
 }
@@ -0,0 +1,256 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.Layout;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//InputDeviceConfig compiled into dense arrays indexed by device namespaced key (see HidFrame.getKey); immutable once built
+public class MappingTable {
+    public static final int KEY_COUNT = HidFrame.KEY_CODES;
+    static final int BUTTON = 0;
+    static final int AXIS = 1;
+    static final int TRIGGER_AXIS = 2; //axis driven from one direction only; rest maps to the axis minimum
+    static final int RELATIVE = 3; //REL_ outputs; the value is a velocity in 1/1000 counts per second, see OutputPacer
+    private static final double DEFAULT_SPEED = 1000; //counts per second at full travel
+    private static final double DEFAULT_WHEEL_SPEED = 10;
+
+    private final long[] routed;
+    private final int[] mappingStart;
+    private final int[] slots;
+    private final int[] kinds;
+    private final int[] signs;
+    private final int[] thresholds;
+    private final short[][] curves; //axis mappings: raw travel -> shaped travel, see CurveTables
+    private final int[] speeds; //relative mappings: velocity at full travel, 1/1000 counts per second
+    private final boolean[] relativeSlots;
+    private final EventCode[] slotEventCodes;
+    private final int[] slotDevices; //output device per slot, see outputDevices()
+    private final int deviceCount;
+    private final int[] restValues; //per slot output for a released key
+
+    public MappingTable(InputDeviceConfig config, Layout layout) {
+        this(config, layout, List.of());
+    }
+
+    //one key namespace per entry of deviceIds, using that device's mapping from the config or the default one
+    public MappingTable(InputDeviceConfig config, Layout layout, List<String> deviceIds) {
+        int namespaces = Math.max(1, deviceIds.size());
+        routed = new long[namespaces * KEY_COUNT / 64];
+        mappingStart = new int[namespaces * KEY_COUNT + 1];
+        Map<EventCode, List<InputDeviceConfig.OutputMapping>> defaultMapping = config.getInputOutputMapping() != null ? config.getInputOutputMapping() : Map.of();
+        List<Map<EventCode, List<InputDeviceConfig.OutputMapping>>> allMappings = new ArrayList<>();
+        allMappings.add(defaultMapping);
+        if (config.getDeviceInputOutputMapping() != null)
+            allMappings.addAll(config.getDeviceInputOutputMapping().values());
+
+        //slots cover every device in the config, connected or not, so the output capabilities stay the same.
+        //a slot is one output of one output device
+        Map<String, Integer> deviceIndex = new LinkedHashMap<>();
+        List<InputDeviceConfig.OutputDeviceConfig> outputDevices = outputDevices(config);
+        for (int device = 1; device < outputDevices.size(); device++) {
+            deviceIndex.put(outputDevices.get(device).getId(), device);
+        }
+        deviceCount = outputDevices.size();
+        Map<Output, Integer> slotIndex = new LinkedHashMap<>();
+        Map<Output, boolean[]> directions = new LinkedHashMap<>(); //[0]: has positive, [1]: has negative
+        for (Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping : allMappings) {
+            for (List<InputDeviceConfig.OutputMapping> outputMappings : inputOutputMapping.values()) {
+                for (InputDeviceConfig.OutputMapping outputMapping : outputMappings) {
+                    EventCode eventCode = outputMapping.getEventCode();
+                    if (eventCode.isKey() && !eventCode.isButton()) {
+                        throw new IllegalArgumentException("mapping to key is unsupported: " + eventCode);
+                    }
+                    Output output = Output.of(outputMapping, deviceIndex);
+                    slotIndex.putIfAbsent(output, slotIndex.size());
+                    directions.computeIfAbsent(output, o -> new boolean[2])[outputMapping.isPositive() ? 0 : 1] = true;
+                }
+            }
+        }
+        slotEventCodes = new EventCode[slotIndex.size()];
+        slotDevices = new int[slotIndex.size()];
+        slotIndex.forEach((output, slot) -> {
+            slotEventCodes[slot] = output.eventCode();
+            slotDevices[slot] = output.device();
+        });
+
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        List<InputDeviceConfig.OutputMapping> ordered = new ArrayList<>();
+        for (int namespace = 0; namespace < namespaces; namespace++) {
+            Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping = defaultMapping;
+            if (namespace < deviceIds.size() && config.getDeviceInputOutputMapping() != null)
+                inputOutputMapping = config.getDeviceInputOutputMapping().getOrDefault(deviceIds.get(namespace), defaultMapping);
+            for (int keyCode = 0; keyCode < KEY_COUNT; keyCode++) {
+                int key = namespace * KEY_COUNT + keyCode;
+                mappingStart[key] = ordered.size();
+                EventCode inputEventCode = keyCode < eventCodeMap.length ? eventCodeMap[keyCode] : EventCode.KEY_RESERVED;
+                List<InputDeviceConfig.OutputMapping> outputMappings = inputEventCode == EventCode.KEY_RESERVED ? null : inputOutputMapping.get(inputEventCode);
+                if (outputMappings != null) {
+                    routed[key >>> 6] |= 1L << key;
+                    ordered.addAll(outputMappings);
+                }
+            }
+        }
+        mappingStart[namespaces * KEY_COUNT] = ordered.size();
+
+        slots = new int[ordered.size()];
+        kinds = new int[ordered.size()];
+        signs = new int[ordered.size()];
+        thresholds = new int[ordered.size()];
+        curves = new short[ordered.size()][];
+        speeds = new int[ordered.size()];
+        relativeSlots = new boolean[slotEventCodes.length];
+        CurveTables curveTables = new CurveTables();
+        restValues = new int[slotEventCodes.length];
+        for (int i = 0; i < ordered.size(); i++) {
+            InputDeviceConfig.OutputMapping outputMapping = ordered.get(i);
+            EventCode eventCode = outputMapping.getEventCode();
+            Output output = Output.of(outputMapping, deviceIndex);
+            boolean[] direction = directions.get(output);
+            slots[i] = slotIndex.get(output);
+            signs[i] = outputMapping.isPositive() ? 1 : -1;
+            if (eventCode.isButton()) {
+                kinds[i] = BUTTON;
+                thresholds[i] = outputMapping.getActuationPoint() != 0 ? outputMapping.getActuationPoint() : config.getDefaultActuationPoint();
+            } else if (isRelative(eventCode)) {
+                kinds[i] = RELATIVE;
+                curves[i] = curveTables.get(outputMapping);
+                speeds[i] = speed(outputMapping);
+                relativeSlots[slots[i]] = true;
+            } else {
+                kinds[i] = direction[0] != direction[1] ? TRIGGER_AXIS : AXIS;
+                curves[i] = curveTables.get(outputMapping);
+            }
+            restValues[slots[i]] = Math.clamp(outputValue(i, 0), Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+    }
+
+    private record Output(int device, EventCode eventCode) {
+        private static Output of(InputDeviceConfig.OutputMapping outputMapping, Map<String, Integer> deviceIndex) {
+            if (outputMapping.getDevice() == null)
+                return new Output(0, outputMapping.getEventCode());
+            Integer device = deviceIndex.get(outputMapping.getDevice());
+            if (device == null) {
+                throw new IllegalArgumentException("unknown output device: " + outputMapping.getDevice());
+            }
+            return new Output(device, outputMapping.getEventCode());
+        }
+    }
+
+    //the virtual devices of a config: 0 is the one described by deviceName/vendorId/productId, followed by outputDevices
+    public static List<InputDeviceConfig.OutputDeviceConfig> outputDevices(InputDeviceConfig config) {
+        List<InputDeviceConfig.OutputDeviceConfig> outputDevices = new ArrayList<>();
+        InputDeviceConfig.OutputDeviceConfig primary = new InputDeviceConfig.OutputDeviceConfig();
+        primary.setDeviceName(config.getDeviceName());
+        primary.setVendorId(config.getVendorId());
+        primary.setProductId(config.getProductId());
+        outputDevices.add(primary);
+        if (config.getOutputDevices() != null) {
+            for (InputDeviceConfig.OutputDeviceConfig outputDevice : config.getOutputDevices()) {
+                if (outputDevice.getId() == null || outputDevices.stream().anyMatch(o -> outputDevice.getId().equals(o.getId()))) {
+                    throw new IllegalArgumentException("output device needs a unique id: " + outputDevice);
+                }
+                outputDevices.add(outputDevice);
+            }
+        }
+        return outputDevices;
+    }
+
+    //routing bit: true when the (device namespaced) key drives the gamepad instead of the virtual keyboard
+    public boolean isMapped(int key) {
+        return (routed[key >>> 6] & (1L << key)) != 0;
+    }
+
+    public void map(HidFrame frame, OutputFrame outputFrame) {
+        outputFrame.clear();
+        for (int i = 0; i < frame.size(); i++) {
+            int key = frame.getKey(i);
+            int inputValue = frame.getValue(i);
+            for (int m = mappingStart[key], end = mappingStart[key + 1]; m < end; m++) {
+                outputFrame.add(slots[m], outputValue(m, inputValue));
+            }
+        }
+    }
+
+    private int outputValue(int mapping, int inputValue) {
+        return switch (kinds[mapping]) {
+            case BUTTON -> inputValue > thresholds[mapping] ? 1 : 0;
+            case TRIGGER_AXIS -> ((curves[mapping][inputValue] & 0xFFFF) - Short.MAX_VALUE) * signs[mapping];
+            case RELATIVE -> velocity(curves[mapping][inputValue] & 0xFFFF, speeds[mapping]) * signs[mapping];
+            default -> ((curves[mapping][inputValue] & 0xFFFF) / 2) * signs[mapping]; //restrict to Short.MAX_VALUE; output values higher/lower than this seem to cause axes to go out of range
+        };
+    }
+
+    static boolean isRelative(EventCode eventCode) {
+        return eventCode.name().startsWith("REL_");
+    }
+
+    //1/1000 counts per second at full travel
+    private static int speed(InputDeviceConfig.OutputMapping outputMapping) {
+        double speed = outputMapping.getSpeed();
+        if (speed == 0)
+            speed = outputMapping.getEventCode() == EventCode.REL_WHEEL || outputMapping.getEventCode() == EventCode.REL_HWHEEL ? DEFAULT_WHEEL_SPEED : DEFAULT_SPEED;
+        if (speed < 0 || speed > 100_000) {
+            throw new IllegalArgumentException("speed out of range for " + outputMapping.getEventCode() + ": " + speed);
+        }
+        return (int) Math.round(speed * 1000);
+    }
+
+    private static int velocity(int response, int speed) {
+        return (int) ((long) response * speed / 0xFFFF);
+    }
+
+    public int getSlotCount() {
+        return slotEventCodes.length;
+    }
+
+    public EventCode getSlotEventCode(int slot) {
+        return slotEventCodes[slot];
+    }
+
+    public int getSlotDevice(int slot) {
+        return slotDevices[slot];
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    //outputs of one device, its capabilities
+    public Set<EventCode> getSlotEventCodes(int device) {
+        Set<EventCode> eventCodes = EnumSet.noneOf(EventCode.class);
+        for (int slot = 0; slot < slotEventCodes.length; slot++) {
+            if (slotDevices[slot] == device)
+                eventCodes.add(slotEventCodes[slot]);
+        }
+        return eventCodes;
+    }
+
+    public int getRestValue(int slot) {
+        return restValues[slot];
+    }
+
+    public boolean isButtonSlot(int slot) {
+        return slotEventCodes[slot].isButton();
+    }
+
+    //relative slots carry velocities (OutputFrame.getSum), integrated into motion on every pacer tick
+    public boolean isRelativeSlot(int slot) {
+        return relativeSlots[slot];
+    }
+
+    public boolean hasRelativeSlots() {
+        for (boolean relative : relativeSlots) {
+            if (relative)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.abbytech.razer.analog.virtual;
+
+import uk.co.bithatch.linuxio.EventCode;
+
+//discards everything; counts what would have been written. used to run the pipeline without /dev/uinput
+public class NullEventSink implements EventSink {
+    private boolean open;
+    private int pendingEvents;
+    private long events;
+    private long frames;
+
+    @Override
+    public void addCapability(EventCode... eventCodes) {
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    @Override
+    public void queue(EventCode eventCode, int value) {
+        pendingEvents++;
+    }
+
+    @Override
+    public void syn() {
+        if (pendingEvents == 0)
+            return;
+        events += pendingEvents;
+        pendingEvents = 0;
+        frames++;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    //number of writes a uinput device would have issued
+    public long getFrames() {
+        return frames;
+    }
+}
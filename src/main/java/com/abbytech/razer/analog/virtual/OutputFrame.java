@@ -0,0 +1,51 @@
+package com.abbytech.razer.analog.virtual;
+
+//per report accumulator of output values, indexed by MappingTable output slot
+public class OutputFrame {
+    private final int[] values;
+    private final boolean[] touched;
+    private final int[] touchedSlots;
+    private int size;
+
+    public OutputFrame(int slotCount) {
+        values = new int[slotCount];
+        touched = new boolean[slotCount];
+        touchedSlots = new int[slotCount];
+    }
+
+    public void add(int slot, int value) {
+        if (!touched[slot]) {
+            touched[slot] = true;
+            touchedSlots[size++] = slot;
+        }
+        values[slot] += value;
+    }
+
+    //number of slots written since the last clear, in first-written order
+    public int size() {
+        return size;
+    }
+
+    public int getSlot(int index) {
+        return touchedSlots[index];
+    }
+
+    //accumulated value of the index-th written slot, clamped to the range accepted by the virtual device
+    public int getValue(int index) {
+        return Math.clamp(values[touchedSlots[index]], Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    //accumulated value of the index-th written slot, unclamped; relative slots carry velocities beyond the axis range
+    public int getSum(int index) {
+        return values[touchedSlots[index]];
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            int slot = touchedSlots[i];
+            touched[slot] = false;
+            values[slot] = 0;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,86 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.util.ThreadPlacement;
+
+import java.util.concurrent.locks.LockSupport;
+
+//runs a tick on its own thread at a fixed rate. deadlines are absolute (start + n * period), so the time spent in a
+//tick and the park overshoot do not accumulate into drift; ticks that are missed entirely are skipped, not bunched.
+//the thread parks until shortly before each deadline and spins the rest, as parkNanos alone overshoots by tens of us
+public class OutputPacer implements AutoCloseable {
+    private static final long SPIN_NANOS = 50_000;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long periodNanos;
+    private final Runnable tick;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long ticks;
+    private long missedTicks;
+
+    public OutputPacer(int rate, Runnable tick, String name) {
+        if (rate <= 0 || rate > 8000) {
+            throw new IllegalArgumentException("output rate out of range: " + rate);
+        }
+        this.periodNanos = NANOS_PER_SECOND / rate;
+        this.tick = tick;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        ThreadPlacement.apply(ThreadPlacement.Role.PACER);
+        long deadline = System.nanoTime() + periodNanos;
+        while (running) {
+            sleepUntil(deadline);
+            if (!running)
+                break;
+            tick.run();
+            ticks++;
+            deadline += periodNanos;
+            long late = System.nanoTime() - deadline;
+            if (late > 0) {
+                long missed = late / periodNanos + 1;
+                missedTicks += missed;
+                deadline += missed * periodNanos;
+            }
+        }
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS)
+                LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            else
+                Thread.onSpinWait();
+        }
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    //stops the thread after its current tick
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        if (thread.isAlive() && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ticks at %d Hz, %d missed", ticks, NANOS_PER_SECOND / periodNanos, missedTicks);
+    }
+}
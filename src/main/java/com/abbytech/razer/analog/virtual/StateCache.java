@@ -0,0 +1,56 @@
+package com.abbytech.razer.analog.virtual;
+
+import java.util.Arrays;
+
+//last emitted value per slot; used to only write transitions to the virtual devices
+public class StateCache {
+    static final int UNKNOWN = Integer.MIN_VALUE;
+    private final int[] lastValues;
+    private long emitted;
+    private long suppressed;
+
+    public StateCache(int size) {
+        lastValues = new int[size];
+        Arrays.fill(lastValues, UNKNOWN);
+    }
+
+    //returns true (and records the value) when it differs from the last emitted one by at least minDelta.
+    //returning to rest (0 for sticks, the end of the range for triggers) is always emitted so axes cannot get stuck
+    //just off rest
+    public boolean update(int index, int value, int minDelta, int rest) {
+        int last = lastValues[index];
+        if (last != UNKNOWN && (last == value || (value != rest && Math.abs(value - last) < minDelta))) {
+            suppressed++;
+            return false;
+        }
+        lastValues[index] = value;
+        emitted++;
+        return true;
+    }
+
+    public boolean update(int index, int value) {
+        return update(index, value, 0, 0);
+    }
+
+    //last emitted value, UNKNOWN when nothing was emitted since the last clear
+    public int get(int index) {
+        return lastValues[index];
+    }
+
+    public void clear() {
+        Arrays.fill(lastValues, UNKNOWN);
+    }
+
+    public long getEmitted() {
+        return emitted;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("emitted %d, suppressed %d", emitted, suppressed);
+    }
+}
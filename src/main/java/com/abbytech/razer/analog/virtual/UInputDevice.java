@@ -0,0 +1,225 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.metrics.PipelineMetrics;
+import com.abbytech.razer.analog.util.LibC;
+import com.sun.jna.Native;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+//uinput device that queues a frame of input_events into one direct buffer and submits it, including the
+//trailing SYN_REPORT, with a single write()
+public class UInputDevice implements EventSink {
+    private static final int EV_SYN = 0x00;
+    private static final int EV_KEY = 0x01;
+    private static final int EV_REL = 0x02;
+    private static final int EV_ABS = 0x03;
+    private static final int UNSUPPORTED = -1; //event types this device does not write, e.g. MSC_ or LED_
+    private static final int SYN_REPORT = 0;
+    private static final int BUS_USB = 0x03;
+
+    private static final long UI_DEV_CREATE = 0x5501;
+    private static final long UI_DEV_DESTROY = 0x5502;
+    private static final long UI_DEV_SETUP = 0x405c5503;
+    private static final long UI_ABS_SETUP = 0x401c5504;
+    private static final long UI_SET_EVBIT = 0x40045564;
+    private static final long UI_SET_KEYBIT = 0x40045565;
+    private static final long UI_SET_RELBIT = 0x40045566;
+    private static final long UI_SET_ABSBIT = 0x40045567;
+    private static final int UINPUT_MAX_NAME_SIZE = 80;
+    private static final int UINPUT_SETUP_SIZE = 8 + UINPUT_MAX_NAME_SIZE + 4;
+    private static final int UINPUT_ABS_SETUP_SIZE = 4 + 6 * 4;
+
+    //struct input_event: struct timeval followed by __u16 type, __u16 code, __s32 value.
+    //the kernel stamps events written to uinput, so the timeval is left zeroed
+    private static final int TIME_SIZE = 2 * Native.LONG_SIZE;
+    static final int EVENT_SIZE = TIME_SIZE + 8;
+    private static final int MAX_FRAME_EVENTS = 64;
+
+    private static final int[] TYPES;
+    private static final int[] CODES;
+
+    static {
+        EventCode[] eventCodes = EventCode.values();
+        TYPES = new int[eventCodes.length];
+        CODES = new int[eventCodes.length];
+        for (EventCode eventCode : eventCodes) {
+            TYPES[eventCode.ordinal()] = typeOf(eventCode);
+            CODES[eventCode.ordinal()] = eventCode.code();
+        }
+    }
+
+    private final String name;
+    private final short vendorId;
+    private final short productId;
+    private final Set<EventCode> capabilities = new LinkedHashSet<>();
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(MAX_FRAME_EVENTS * EVENT_SIZE).order(ByteOrder.nativeOrder());
+    private int frameEvents;
+    private int fd = -1;
+
+    public UInputDevice(String name, short vendorId, short productId) {
+        this.name = name;
+        this.vendorId = vendorId;
+        this.productId = productId;
+    }
+
+    @Override
+    public void addCapability(EventCode... eventCodes) {
+        for (EventCode eventCode : eventCodes) {
+            if (TYPES[eventCode.ordinal()] == UNSUPPORTED || TYPES[eventCode.ordinal()] == EV_SYN) {
+                throw new IllegalArgumentException("unsupported uinput output: " + eventCode);
+            }
+        }
+        capabilities.addAll(List.of(eventCodes));
+    }
+
+    public Set<EventCode> getCapabilities() {
+        return capabilities;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return fd >= 0;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (isOpen()) {
+            throw new IllegalStateException("device already open");
+        }
+        int descriptor = LibC.open("/dev/uinput", LibC.O_WRONLY | LibC.O_NONBLOCK);
+        if (descriptor < 0) {
+            throw new IOException(String.format("unable to open /dev/uinput: errno %d", Native.getLastError()));
+        }
+        try {
+            setup(descriptor);
+        } catch (IOException e) {
+            LibC.close(descriptor);
+            throw e;
+        }
+        fd = descriptor;
+        frameEvents = 0;
+    }
+
+    private void setup(int descriptor) throws IOException {
+        boolean[] types = new boolean[EV_ABS + 1];
+        for (EventCode eventCode : capabilities) {
+            types[TYPES[eventCode.ordinal()]] = true;
+        }
+        for (int type = EV_KEY; type < types.length; type++) {
+            if (types[type])
+                ioctl(descriptor, UI_SET_EVBIT, type);
+        }
+        ByteBuffer absSetup = ByteBuffer.allocateDirect(UINPUT_ABS_SETUP_SIZE).order(ByteOrder.nativeOrder());
+        for (EventCode eventCode : capabilities) {
+            int code = CODES[eventCode.ordinal()];
+            switch (TYPES[eventCode.ordinal()]) {
+                case EV_KEY -> ioctl(descriptor, UI_SET_KEYBIT, code);
+                case EV_REL -> ioctl(descriptor, UI_SET_RELBIT, code);
+                case EV_ABS -> {
+                    ioctl(descriptor, UI_SET_ABSBIT, code);
+                    absSetup.clear();
+                    absSetup.putShort(0, (short) code);
+                    absSetup.putInt(4, 0); //value
+                    absSetup.putInt(8, Short.MIN_VALUE); //minimum
+                    absSetup.putInt(12, Short.MAX_VALUE); //maximum
+                    ioctl(descriptor, UI_ABS_SETUP, absSetup);
+                }
+                default -> {
+                }
+            }
+        }
+        ByteBuffer setup = ByteBuffer.allocateDirect(UINPUT_SETUP_SIZE).order(ByteOrder.nativeOrder());
+        setup.putShort(0, (short) BUS_USB);
+        setup.putShort(2, vendorId);
+        setup.putShort(4, productId);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        setup.put(8, nameBytes, 0, Math.min(nameBytes.length, UINPUT_MAX_NAME_SIZE - 1));
+        ioctl(descriptor, UI_DEV_SETUP, setup);
+        if (LibC.ioctl(descriptor, UI_DEV_CREATE, 0) < 0) {
+            throw new IOException(String.format("unable to create uinput device: errno %d", Native.getLastError()));
+        }
+    }
+
+    //adds an event to the current frame; nothing is written until syn()
+    @Override
+    public void queue(EventCode eventCode, int value) throws IOException {
+        if (frameEvents == MAX_FRAME_EVENTS - 1) {
+            write(frameEvents);
+        }
+        put(TYPES[eventCode.ordinal()], CODES[eventCode.ordinal()], value);
+        if (PipelineMetrics.ENABLED)
+            PipelineMetrics.countEvents(1);
+    }
+
+    //terminates the current frame with SYN_REPORT and submits it; a frame without events is not written
+    @Override
+    public void syn() throws IOException {
+        if (frameEvents == 0) {
+            return;
+        }
+        put(EV_SYN, SYN_REPORT, 0);
+        write(frameEvents);
+    }
+
+    private void put(int type, int code, int value) {
+        int offset = frameEvents * EVENT_SIZE + TIME_SIZE;
+        frame.putShort(offset, (short) type);
+        frame.putShort(offset + 2, (short) code);
+        frame.putInt(offset + 4, value);
+        frameEvents++;
+    }
+
+    private void write(int events) throws IOException {
+        frameEvents = 0;
+        if (!isOpen()) {
+            throw new IOException("device not open");
+        }
+        long length = (long) events * EVENT_SIZE;
+        long written = LibC.write(fd, frame, length);
+        if (written != length) {
+            throw new IOException(String.format("uinput write failed: %d/%d bytes, errno %d", written, length, Native.getLastError()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        LibC.ioctl(fd, UI_DEV_DESTROY, 0);
+        LibC.close(fd);
+        fd = -1;
+    }
+
+    private static void ioctl(int descriptor, long request, int value) throws IOException {
+        if (LibC.ioctl(descriptor, request, value) < 0) {
+            throw new IOException(String.format("uinput ioctl 0x%x(%d) failed: errno %d", request, value, Native.getLastError()));
+        }
+    }
+
+    private static void ioctl(int descriptor, long request, ByteBuffer argument) throws IOException {
+        if (LibC.ioctl(descriptor, request, argument) < 0) {
+            throw new IOException(String.format("uinput ioctl 0x%x failed: errno %d", request, Native.getLastError()));
+        }
+    }
+
+    private static int typeOf(EventCode eventCode) {
+        if (eventCode.isKey() || eventCode.isButton())
+            return EV_KEY;
+        String name = eventCode.name();
+        if (name.startsWith("ABS_"))
+            return EV_ABS;
+        if (name.startsWith("REL_"))
+            return EV_REL;
+        if (name.startsWith("SYN_"))
+            return EV_SYN;
+        return UNSUPPORTED;
+    }
+}
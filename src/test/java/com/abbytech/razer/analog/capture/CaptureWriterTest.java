@@ -0,0 +1,47 @@
+package com.abbytech.razer.analog.capture;
+
+import com.abbytech.razer.analog.protocol.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CaptureWriterTest {
+    //spans more than one mapped window, so the windows mapped ahead are used and the last one is trimmed
+    @Test
+    void replaysWhatWasWrittenAcrossWindows() throws IOException {
+        Path directory = Files.createTempDirectory("razer-capture");
+        Path path = directory.resolve("capture");
+        int count = CaptureFile.CHUNK_RECORDS * 2 + 10;
+        ByteBuffer report = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+        try {
+            try (CaptureWriter writer = new CaptureWriter(path)) {
+                for (int i = 0; i < count; i++) {
+                    report.clear();
+                    report.put(0, Constants.hidStartByte).putInt(1, i);
+                    writer.append(i, report);
+                }
+                assertEquals(count, writer.getRecords());
+            }
+            assertEquals(CaptureFile.recordOffset(count), Files.size(path));
+
+            ReplayReportSource replay = new ReplayReportSource(path, false);
+            replay.openDevice();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer replayed = replay.readHIDData();
+                assertEquals(Constants.hidStartByte, replayed.get(replayed.position()));
+                assertEquals(i, replayed.getInt(replayed.position() + 1));
+            }
+            assertNull(replay.readHIDData());
+            replay.closeDevice();
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(directory);
+        }
+    }
+}
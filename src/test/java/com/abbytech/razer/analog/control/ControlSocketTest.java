@@ -0,0 +1,96 @@
+package com.abbytech.razer.analog.control;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlSocketTest {
+    private Path directory;
+    private Path path;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("razer-control");
+        path = directory.resolve("control");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void repliesToCommandsAndOnlyTheOwnerMayConnect() throws IOException {
+        try (ControlSocket controlSocket = new ControlSocket(path, command -> {
+            if (command.equals("fail"))
+                throw new IllegalArgumentException("failed");
+            return "got " + command;
+        })) {
+            controlSocket.start();
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path)));
+            assertEquals(List.of("got next", "error: failed"), send("next\n\nfail\n", 2));
+            //nothing but the socket is left next to it
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(List.of(path), files.toList());
+            }
+        }
+        assertTrue(Files.notExists(path));
+    }
+
+    @Test
+    void staleSocketIsReplaced() throws IOException {
+        ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        stale.bind(UnixDomainSocketAddress.of(path));
+        stale.close(); //the file stays behind
+        try (ControlSocket controlSocket = new ControlSocket(path, command -> "ok")) {
+            controlSocket.start();
+            assertEquals(List.of("ok"), send("profiles\n", 1));
+        }
+    }
+
+    @Test
+    void otherFilesAreLeftAlone() throws IOException {
+        Files.writeString(path, "keep");
+        assertThrows(IOException.class, () -> new ControlSocket(path, command -> "ok"));
+        assertEquals("keep", Files.readString(path));
+    }
+
+    private List<String> send(String commands, int replies) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(path));
+             BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            writer.write(commands);
+            writer.flush();
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < replies; i++) {
+                lines.add(reader.readLine());
+            }
+            return lines;
+        }
+    }
+}
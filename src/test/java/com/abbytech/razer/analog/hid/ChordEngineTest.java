@@ -0,0 +1,137 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChordEngineTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_Q = 0x11;
+    private static final int KEY_A = 0x1f;
+    private static final int KEY_FN = 0x3b;
+    private static final int KEY_HOME = 0x50;
+    private static final int KEY_PAGEUP = 0x55;
+    private static final int KEY_PAGEDOWN = 0x56;
+
+    private final Layout layout = new HuntsmanV3ProLayout();
+    private final HidFrame frame = new HidFrame();
+    private final List<InputDeviceConfig.ChordAction> fired = new ArrayList<>();
+
+    private static InputDeviceConfig.ChordBinding chord(InputDeviceConfig.ChordAction action, int actuationPoint, EventCode... keys) {
+        InputDeviceConfig.ChordBinding binding = new InputDeviceConfig.ChordBinding();
+        binding.setAction(action);
+        binding.setActuationPoint(actuationPoint);
+        binding.setKeys(List.of(keys));
+        return binding;
+    }
+
+    private ChordEngine engine(List<InputDeviceConfig.ChordBinding> chords) {
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setChords(chords);
+        return new ChordEngine(config, layout, binding -> fired.add(binding.getAction()));
+    }
+
+    //keyCodeValues: hid key code, travel pairs
+    private HidFrame frame(int device, int... keyCodeValues) {
+        frame.clear();
+        frame.setDevice(device);
+        for (int i = 0; i < keyCodeValues.length; i += 2) {
+            frame.add(keyCodeValues[i], layout.getEventCodeMap()[keyCodeValues[i]], keyCodeValues[i + 1]);
+        }
+        return frame;
+    }
+
+    @Test
+    void defaultChordsUseFn() {
+        ChordEngine engine = engine(null);
+        engine.apply(frame(0, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        engine.apply(frame(0));
+        engine.apply(frame(0, KEY_FN, 40000, KEY_PAGEDOWN, 40000));
+        engine.apply(frame(0));
+        engine.apply(frame(0, KEY_HOME, 40000, KEY_FN, 40000));
+        assertEquals(List.of(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK, InputDeviceConfig.ChordAction.DISABLE_JOYSTICK,
+                InputDeviceConfig.ChordAction.TERMINATE), fired);
+    }
+
+    @Test
+    void chordFiresOnceWhileHeldAndIgnoresOtherKeys() {
+        ChordEngine engine = engine(List.of(chord(InputDeviceConfig.ChordAction.TOGGLE_JOYSTICK, 0, EventCode.KEY_Q, EventCode.KEY_A)));
+        engine.apply(frame(0, KEY_Q, 40000, KEY_W, 50000));
+        assertEquals(List.of(), fired);
+        engine.apply(frame(0, KEY_Q, 40000, KEY_A, 40000, KEY_W, 50000));
+        engine.apply(frame(0, KEY_Q, 45000, KEY_A, 45000, KEY_W, 50000));
+        assertEquals(List.of(InputDeviceConfig.ChordAction.TOGGLE_JOYSTICK), fired);
+        engine.apply(frame(0, KEY_Q, 40000));
+        engine.apply(frame(0, KEY_Q, 40000, KEY_A, 40000));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    void chordKeysReadAsReleasedUntilLetGo() {
+        ChordEngine engine = engine(List.of(chord(InputDeviceConfig.ChordAction.TOGGLE_JOYSTICK, 0, EventCode.KEY_Q, EventCode.KEY_A)));
+        engine.apply(frame(0, KEY_Q, 40000, KEY_A, 40000, KEY_W, 50000));
+        assertEquals(0, frame.getValue(0));
+        assertEquals(0, frame.getValue(1));
+        assertEquals(50000, frame.getValue(2));
+        //still consumed while travelling back up past the actuation point
+        engine.apply(frame(0, KEY_Q, 1000, KEY_W, 50000));
+        assertEquals(0, frame.getValue(0));
+        engine.apply(frame(0, KEY_W, 50000));
+        engine.apply(frame(0, KEY_Q, 1000));
+        assertEquals(1000, frame.getValue(0));
+    }
+
+    @Test
+    void chordActuationPointsAreSeparate() {
+        ChordEngine engine = engine(List.of(
+                chord(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK, 10000, EventCode.KEY_Q, EventCode.KEY_A),
+                chord(InputDeviceConfig.ChordAction.DISABLE_JOYSTICK, 60000, EventCode.KEY_Q, EventCode.KEY_W)));
+        engine.apply(frame(0, KEY_Q, 20000, KEY_A, 20000, KEY_W, 20000));
+        assertEquals(List.of(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK), fired);
+        engine.apply(frame(0, KEY_Q, 61000, KEY_A, 20000, KEY_W, 61000));
+        assertEquals(List.of(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK, InputDeviceConfig.ChordAction.DISABLE_JOYSTICK), fired);
+    }
+
+    @Test
+    void primedChordsFireOnlyAfterRelease() {
+        ChordEngine engine = engine(null);
+        engine.prime(frame(0, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        assertEquals(0, frame.getValue(1));
+        engine.apply(frame(0, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        assertEquals(List.of(), fired);
+        engine.apply(frame(0));
+        engine.apply(frame(0, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        assertEquals(List.of(InputDeviceConfig.ChordAction.ENABLE_JOYSTICK), fired);
+    }
+
+    @Test
+    void boardsKeepTheirOwnState() {
+        ChordEngine engine = engine(null);
+        engine.apply(frame(0, KEY_FN, 40000));
+        engine.apply(frame(1, KEY_PAGEUP, 40000));
+        assertEquals(40000, frame.getValue(0));
+        assertEquals(List.of(), fired);
+        engine.apply(frame(1, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        engine.apply(frame(0, KEY_FN, 40000, KEY_PAGEUP, 40000));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    void invalidChordsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> engine(List.of(chord(InputDeviceConfig.ChordAction.PROFILE, 0, EventCode.KEY_Q))));
+        InputDeviceConfig.ChordBinding profile = chord(InputDeviceConfig.ChordAction.TERMINATE, 0, EventCode.KEY_Q);
+        profile.setProfile("game");
+        assertThrows(IllegalArgumentException.class, () -> engine(List.of(profile)));
+        assertThrows(IllegalArgumentException.class, () -> engine(List.of(chord(InputDeviceConfig.ChordAction.TERMINATE, 0))));
+        assertThrows(IllegalArgumentException.class, () -> engine(List.of(chord(InputDeviceConfig.ChordAction.TERMINATE, 70000, EventCode.KEY_Q))));
+        assertThrows(IllegalArgumentException.class, () -> engine(List.of(chord(InputDeviceConfig.ChordAction.TERMINATE, 0, EventCode.BTN_A))));
+    }
+}
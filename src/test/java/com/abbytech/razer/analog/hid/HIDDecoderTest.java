@@ -0,0 +1,48 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.protocol.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HIDDecoderTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_S = 0x20;
+
+    private final HIDDecoder decoder = new HIDDecoder(new HuntsmanV3ProLayout());
+    private final HidFrame frame = new HidFrame();
+
+    private static ByteBuffer report(int length, int... keyCodeValues) {
+        ByteBuffer report = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+        report.put(Constants.hidStartByte);
+        for (int i = 0; i < keyCodeValues.length; i += 2) {
+            report.put((byte) keyCodeValues[i]).putShort((short) keyCodeValues[i + 1]);
+        }
+        return report.clear().limit(length);
+    }
+
+    @Test
+    void fullReport() {
+        decoder.decode(report(Constants.HID_DATA_LENGTH, KEY_W, 40000, KEY_S, 1000), frame);
+        assertEquals(2, frame.size());
+        assertEquals(KEY_W, frame.getKeyCode(0));
+        assertEquals(40000, frame.getValue(0));
+        assertEquals(KEY_S, frame.getKeyCode(1));
+        assertEquals(1000, frame.getValue(1));
+    }
+
+    //short transfers decode the whole keys they hold instead of failing
+    @Test
+    void shortReports() {
+        decoder.decode(report(5, KEY_W, 40000, KEY_S, 1000), frame);
+        assertEquals(1, frame.size());
+        assertEquals(40000, frame.getValue(0));
+        decoder.decode(report(1, KEY_W, 40000), frame);
+        assertEquals(0, frame.size());
+        decoder.decode(report(0, KEY_W, 40000), frame);
+        assertEquals(0, frame.size());
+    }
+}
@@ -0,0 +1,94 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyActuationTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_S = 0x20;
+
+    private final Layout layout = new HuntsmanV3ProLayout();
+    private final HidFrame frame = new HidFrame();
+
+    private static InputDeviceConfig.KeyActuationConfig actuation(int actuationPoint, int resetPoint, boolean rapidTrigger) {
+        InputDeviceConfig.KeyActuationConfig actuation = new InputDeviceConfig.KeyActuationConfig();
+        actuation.setActuationPoint(actuationPoint);
+        actuation.setResetPoint(resetPoint);
+        actuation.setRapidTrigger(rapidTrigger);
+        actuation.setPressSensitivity(1000);
+        actuation.setReleaseSensitivity(1000);
+        return actuation;
+    }
+
+    private KeyActuation keyActuation(Map<EventCode, InputDeviceConfig.KeyActuationConfig> keyActuations) {
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setKeyActuations(keyActuations);
+        return new KeyActuation(config, layout);
+    }
+
+    private int update(KeyActuation actuation, int device, int keyCode, int value) {
+        frame.clear();
+        frame.setDevice(device);
+        frame.add(keyCode, layout.getEventCodeMap()[keyCode], value);
+        return actuation.update(frame, 0);
+    }
+
+    //expected pressed state after each travel value
+    private void assertStates(KeyActuation actuation, int keyCode, int[] values, int[] states) {
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(states[i], update(actuation, 0, keyCode, values[i]), "after travel " + values[i] + " (step " + i + ")");
+        }
+    }
+
+    @Test
+    void keysPressHalfwayByDefault() {
+        KeyActuation actuation = keyActuation(null);
+        assertStates(actuation, KEY_W, new int[]{1000, 32767, 32768, 40000, 32768, 32767}, new int[]{0, 0, 1, 1, 1, 0});
+    }
+
+    @Test
+    void resetPointBelowTheActuationPointAddsHysteresis() {
+        KeyActuation actuation = keyActuation(Map.of(EventCode.KEY_W, actuation(8000, 4000, false)));
+        assertStates(actuation, KEY_W, new int[]{7000, 8001, 5000, 4001, 4000, 7000, 8001}, new int[]{0, 1, 1, 1, 0, 0, 1});
+        assertStates(actuation, KEY_S, new int[]{8001, 32768}, new int[]{0, 1}); //not configured: halfway
+    }
+
+    @Test
+    void rapidTriggerFollowsTheDirectionOfTravel() {
+        KeyActuation actuation = keyActuation(Map.of(EventCode.KEY_W, actuation(8000, 4000, true)));
+        assertStates(actuation, KEY_W,
+                new int[]{9000, 20000, 19500, 19000, 18500, 19499, 19500, 6000, 3999, 6000, 8001},
+                new int[]{1, 1, 1, 0, 0, 0, 1, 0, 0, 0, 1});
+    }
+
+    @Test
+    void boardsKeepTheirOwnState() {
+        KeyActuation actuation = keyActuation(Map.of(EventCode.KEY_W, actuation(8000, 4000, false)));
+        assertEquals(1, update(actuation, 0, KEY_W, 9000));
+        assertEquals(0, update(actuation, 1, KEY_W, 5000));
+        assertEquals(1, update(actuation, 0, KEY_W, 5000));
+    }
+
+    @Test
+    void resetPointAboveTheActuationPointIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> keyActuation(Map.of(EventCode.KEY_W, actuation(4000, 8000, false))));
+    }
+
+    @Test
+    void reloadedActuationKeepsHeldKeysPressed() {
+        KeyActuation actuation = keyActuation(Map.of(EventCode.KEY_W, actuation(8000, 4000, true)));
+        assertStates(actuation, KEY_W, new int[]{9000, 20000}, new int[]{1, 1});
+        KeyActuation reloaded = keyActuation(Map.of(EventCode.KEY_W, actuation(30000, 4000, true)));
+        reloaded.carryOver(actuation);
+        //still pressed below the new actuation point; rapid trigger releases from the old extreme
+        assertStates(reloaded, KEY_W, new int[]{19500, 19000}, new int[]{1, 0});
+    }
+}
@@ -0,0 +1,97 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.CalibrationConfig;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyCalibrationTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_S = 0x20;
+
+    private final Layout layout = new HuntsmanV3ProLayout();
+    private final HidFrame frame = new HidFrame();
+
+    private static CalibrationConfig.KeyRange range(int rest, int bottom) {
+        CalibrationConfig.KeyRange range = new CalibrationConfig.KeyRange();
+        range.setRest(rest);
+        range.setBottom(bottom);
+        return range;
+    }
+
+    private KeyCalibration calibration(Map<EventCode, CalibrationConfig.KeyRange> keys) {
+        CalibrationConfig config = new CalibrationConfig();
+        config.setKeys(keys);
+        return new KeyCalibration(config, layout);
+    }
+
+    private HidFrame frame(int device, int keyCode, int value) {
+        frame.clear();
+        frame.setDevice(device);
+        frame.add(keyCode, layout.getEventCodeMap()[keyCode], value);
+        return frame;
+    }
+
+    private int apply(KeyCalibration calibration, int keyCode, int value) {
+        calibration.apply(frame(0, keyCode, value));
+        return frame.getValue(0);
+    }
+
+    @Test
+    void rangeIsStretchedToFullTravel() {
+        KeyCalibration calibration = calibration(Map.of(EventCode.KEY_W, range(10000, 50000)));
+        assertEquals(1, calibration.size());
+        assertEquals(0, apply(calibration, KEY_W, 5000));
+        assertEquals(0, apply(calibration, KEY_W, 10000));
+        assertEquals(32767, apply(calibration, KEY_W, 30000), 1);
+        assertEquals(0xFFFF, apply(calibration, KEY_W, 50000));
+        assertEquals(0xFFFF, apply(calibration, KEY_W, 60000));
+    }
+
+    @Test
+    void uncalibratedKeysPassUnchanged() {
+        KeyCalibration calibration = calibration(Map.of(EventCode.KEY_W, range(10000, 50000)));
+        assertEquals(30000, apply(calibration, KEY_S, 30000));
+        assertEquals(30000, apply(calibration(null), KEY_W, 30000));
+    }
+
+    @Test
+    void invalidRangesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> calibration(Map.of(EventCode.KEY_W, range(-1, 50000))));
+        assertThrows(IllegalArgumentException.class, () -> calibration(Map.of(EventCode.KEY_W, range(10000, 0x10000))));
+        assertThrows(IllegalArgumentException.class, () -> calibration(Map.of(EventCode.KEY_W, range(10000, 10000 + KeyCalibration.MIN_RANGE - 1))));
+        assertThrows(IllegalArgumentException.class, () -> calibration(Map.of(EventCode.BTN_A, range(10000, 50000))));
+    }
+
+    @Test
+    void recorderKeepsTheRangeOfEveryBoard() {
+        CalibrationRecorder recorder = new CalibrationRecorder();
+        recorder.record(frame(0, KEY_W, 12000));
+        recorder.record(frame(0, KEY_W, 52000));
+        recorder.record(frame(0, KEY_W, 0));
+        recorder.record(frame(0, KEY_W, 30000));
+        recorder.record(frame(0, KEY_S, 12000));
+        recorder.record(frame(0, KEY_S, 12000 + KeyCalibration.MIN_RANGE - 1)); //not pressed all the way down
+        recorder.record(frame(1, KEY_S, 8000));
+        recorder.record(frame(1, KEY_S, 60000));
+
+        CalibrationConfig first = recorder.toConfig(0, layout);
+        assertEquals(1, first.getKeys().size());
+        assertRange(12000, 52000, first.getKeys().get(EventCode.KEY_W));
+        CalibrationConfig second = recorder.toConfig(1, layout);
+        assertEquals(1, second.getKeys().size());
+        assertRange(8000, 60000, second.getKeys().get(EventCode.KEY_S));
+        assertEquals(1, new KeyCalibration(second, layout).size());
+    }
+
+    private static void assertRange(int rest, int bottom, CalibrationConfig.KeyRange range) {
+        assertEquals(rest, range.getRest());
+        assertEquals(bottom, range.getBottom());
+    }
+}
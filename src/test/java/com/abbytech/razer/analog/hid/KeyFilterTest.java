@@ -0,0 +1,120 @@
+package com.abbytech.razer.analog.hid;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyFilterTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_S = 0x20;
+    private static final long MILLIS = 1_000_000;
+
+    private final Layout layout = new HuntsmanV3ProLayout();
+    private final HidFrame frame = new HidFrame();
+
+    private static InputDeviceConfig.KeyFilterConfig filter(InputDeviceConfig.KeyFilterType type) {
+        InputDeviceConfig.KeyFilterConfig filter = new InputDeviceConfig.KeyFilterConfig();
+        filter.setType(type);
+        return filter;
+    }
+
+    private KeyFilter keyFilter(InputDeviceConfig.KeyFilterConfig defaultFilter, Map<EventCode, InputDeviceConfig.KeyFilterConfig> keyFilters) {
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setDefaultKeyFilter(defaultFilter);
+        config.setKeyFilters(keyFilters);
+        return new KeyFilter(config, layout);
+    }
+
+    //filtered travel of one key in a frame of its own
+    private int apply(KeyFilter filter, int device, int keyCode, int value, long timestamp) {
+        frame.clear();
+        frame.setDevice(device);
+        frame.setTimestamp(timestamp);
+        frame.add(keyCode, layout.getEventCodeMap()[keyCode], value);
+        filter.apply(frame);
+        return frame.getValue(0);
+    }
+
+    @Test
+    void withoutFiltersNothingChanges() {
+        KeyFilter filter = keyFilter(null, null);
+        assertFalse(filter.isEnabled());
+        assertEquals(1000, apply(filter, 0, KEY_W, 1000, 0));
+        assertEquals(1010, apply(filter, 0, KEY_W, 1010, MILLIS));
+    }
+
+    @Test
+    void hysteresisDropsChangesSmallerThanTheBand() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.HYSTERESIS), null);
+        assertTrue(filter.isEnabled());
+        assertEquals(1000, apply(filter, 0, KEY_W, 1000, 0));
+        assertEquals(1000, apply(filter, 0, KEY_W, 1063, MILLIS));
+        assertEquals(1064, apply(filter, 0, KEY_W, 1064, 2 * MILLIS));
+        assertEquals(0xFFFF, apply(filter, 0, KEY_W, 0xFFFF, 3 * MILLIS)); //bottom-out always passes
+        assertEquals(0, apply(filter, 0, KEY_W, 0, 4 * MILLIS));
+        assertEquals(10, apply(filter, 0, KEY_W, 10, 5 * MILLIS)); //first value after a release is taken as is
+    }
+
+    @Test
+    void emaAveragesSmallChangesAndSnapsToLargeOnes() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.EMA), null);
+        assertEquals(1000, apply(filter, 0, KEY_W, 1000, 0));
+        assertEquals(1050, apply(filter, 0, KEY_W, 1100, MILLIS));
+        assertEquals(5000, apply(filter, 0, KEY_W, 5000, 2 * MILLIS));
+    }
+
+    @Test
+    void oneEuroSmoothsJitterButFollowsFastPresses() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.ONE_EURO), null);
+        assertEquals(10000, apply(filter, 0, KEY_W, 10000, 0));
+        assertEquals(10000, apply(filter, 0, KEY_W, 10010, MILLIS));
+        assertEquals(10000, apply(filter, 0, KEY_W, 9990, 2 * MILLIS));
+        int pressed = apply(filter, 0, KEY_W, 40000, 3 * MILLIS);
+        assertTrue(pressed > 25000 && pressed <= 40000, "fast press filtered to " + pressed);
+    }
+
+    @Test
+    void keyFiltersOverrideTheDefault() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.HYSTERESIS),
+                Map.of(EventCode.KEY_W, filter(InputDeviceConfig.KeyFilterType.NONE)));
+        apply(filter, 0, KEY_W, 1000, 0);
+        assertEquals(1010, apply(filter, 0, KEY_W, 1010, MILLIS));
+        apply(filter, 0, KEY_S, 1000, 0);
+        assertEquals(1000, apply(filter, 0, KEY_S, 1010, MILLIS));
+    }
+
+    @Test
+    void boardsKeepTheirOwnState() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.HYSTERESIS), null);
+        assertEquals(1000, apply(filter, 0, KEY_W, 1000, 0));
+        assertEquals(1010, apply(filter, 1, KEY_W, 1010, 0));
+        assertEquals(1000, apply(filter, 0, KEY_W, 1020, MILLIS));
+        assertEquals(1010, apply(filter, 1, KEY_W, 1020, MILLIS));
+    }
+
+    @Test
+    void invalidParametersAreRejected() {
+        InputDeviceConfig.KeyFilterConfig ema = filter(InputDeviceConfig.KeyFilterType.EMA);
+        ema.setAlpha(1.5);
+        assertThrows(IllegalArgumentException.class, () -> keyFilter(ema, null));
+    }
+
+    @Test
+    void reloadedFilterContinuesFromTheSameState() {
+        KeyFilter filter = keyFilter(filter(InputDeviceConfig.KeyFilterType.EMA), null);
+        apply(filter, 0, KEY_W, 1000, 0);
+        KeyFilter reloaded = keyFilter(filter(InputDeviceConfig.KeyFilterType.EMA), null);
+        reloaded.carryOver(filter);
+        assertEquals(1050, apply(reloaded, 0, KEY_W, 1100, MILLIS));
+        //filtered differently now: starts over
+        KeyFilter changed = keyFilter(filter(InputDeviceConfig.KeyFilterType.HYSTERESIS), null);
+        changed.carryOver(reloaded);
+        assertEquals(1200, apply(changed, 0, KEY_W, 1200, 2 * MILLIS));
+    }
+}
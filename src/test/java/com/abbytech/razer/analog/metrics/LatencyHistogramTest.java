@@ -0,0 +1,77 @@
+package com.abbytech.razer.analog.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+        assertEquals(32, histogram.getCount());
+        assertEquals(15, histogram.getPercentile(50));
+        assertEquals(31, histogram.getPercentile(100));
+        assertEquals(31, histogram.getMax());
+    }
+
+    //every value lies within its bucket, and a bucket is at most 1/16 of its values wide
+    @Test
+    void bucketsCoverValuesWithinPrecision() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1L << 40; value = value < 4096 ? value + 1 : value + value / 7) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(index >= previousIndex, "index decreased at " + value);
+            previousIndex = index;
+            long upper = LatencyHistogram.upperBound(index);
+            long lower = index == 0 ? 0 : LatencyHistogram.upperBound(index - 1) + 1;
+            assertTrue(lower <= value && value <= upper, value + " outside " + lower + "-" + upper);
+            assertTrue(upper - lower <= Math.max(0, value / 16), "bucket " + lower + "-" + upper + " too wide");
+        }
+    }
+
+    @Test
+    void percentilesReturnBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_000);
+        }
+        histogram.record(1_000_000);
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 1_000 && p50 <= 1_000 + 1_000 / 16, "p50 " + p50);
+        assertEquals(p50, histogram.getPercentile(99));
+        long max = histogram.getMax();
+        assertTrue(max >= 1_000_000 && max <= 1_000_000 + 1_000_000 / 16, "max " + max);
+        assertEquals(max, histogram.getPercentile(100));
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        assertEquals(2, histogram.getCount());
+    }
+
+    @Test
+    void resetClearsCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,166 @@
+package com.abbytech.razer.analog.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//unplugs scripted into the transport: a read failing or ending mid-stream, opens failing until the device is back
+class ReconnectingReportSourceTest {
+    private static final int KEY_W = 0x12;
+    private static final int KEY_S = 0x20;
+    private static final Object END = new Object(); //readHIDData() returns null
+
+    private final ScriptedSource source = new ScriptedSource();
+    private final ScriptedMonitor monitor = new ScriptedMonitor();
+    private final ReconnectingReportSource reconnecting = new ReconnectingReportSource(source, monitor);
+
+    //keyCodeValues: hid key code, travel pairs
+    private static ByteBuffer report(int... keyCodeValues) {
+        ByteBuffer report = ByteBuffer.allocate(Constants.HID_DATA_LENGTH);
+        report.put(Constants.hidStartByte);
+        for (int i = 0; i < keyCodeValues.length; i += 2) {
+            report.put((byte) keyCodeValues[i]).putShort((short) keyCodeValues[i + 1]);
+        }
+        return report.clear();
+    }
+
+    private static void assertReport(ByteBuffer expected, ByteBuffer actual) {
+        byte[] expectedBytes = new byte[expected.remaining()];
+        expected.duplicate().get(expectedBytes);
+        byte[] actualBytes = new byte[actual.remaining()];
+        actual.duplicate().get(actualBytes);
+        assertArrayEquals(expectedBytes, actualBytes);
+    }
+
+    @Test
+    void failedReadReleasesHeldKeysAndReopens() {
+        source.script.addAll(List.of(report(KEY_W, 40000, KEY_S, 1000), new RuntimeException("unplugged"), report(KEY_W, 2000)));
+        monitor.arrivals.addAll(List.of(false, true));
+        reconnecting.openDevice();
+        source.openFailures = 1; //not back yet when first retried
+
+        assertReport(report(KEY_W, 40000, KEY_S, 1000), reconnecting.readHIDData());
+        assertReport(report(KEY_W, 0, KEY_S, 0), reconnecting.readHIDData());
+        assertEquals(1, source.closes);
+        assertTrue(reconnecting.isDeviceOpen());
+
+        assertReport(report(KEY_W, 2000), reconnecting.readHIDData());
+        assertEquals(3, source.opens); //the first, a failed retry after the timeout, the one after the arrival
+        assertEquals(2, monitor.waits);
+        assertTrue(source.isDeviceOpen());
+    }
+
+    @Test
+    void endedReadReopens() {
+        source.script.addAll(List.of(report(KEY_W, 40000), END, report(KEY_W, 41000)));
+        monitor.arrivals.add(true);
+        reconnecting.openDevice();
+
+        assertReport(report(KEY_W, 40000), reconnecting.readHIDData());
+        assertReport(report(KEY_W, 0), reconnecting.readHIDData());
+        assertReport(report(KEY_W, 41000), reconnecting.readHIDData());
+        assertEquals(2, source.opens);
+        assertEquals(1, source.closes);
+    }
+
+    //nothing held: no release report, reading goes straight on after reopening
+    @Test
+    void nothingToReleaseWithoutKeysHeld() {
+        source.script.addAll(List.of(report(), END, report(KEY_S, 3000)));
+        monitor.arrivals.add(true);
+        reconnecting.openDevice();
+
+        assertReport(report(), reconnecting.readHIDData());
+        assertReport(report(KEY_S, 3000), reconnecting.readHIDData());
+        assertEquals(2, source.opens);
+    }
+
+    @Test
+    void closingWhileReconnectingEndsTheRead() {
+        source.script.addAll(List.of(END, report(KEY_W, 40000)));
+        monitor.onWait = reconnecting::closeDevice;
+        reconnecting.openDevice();
+
+        assertNull(reconnecting.readHIDData());
+        assertFalse(reconnecting.isDeviceOpen());
+        assertEquals(1, source.opens);
+        assertTrue(monitor.closed);
+    }
+
+    private static final class ScriptedSource implements ReportSource {
+        private final Deque<Object> script = new ArrayDeque<>(); //reports, exceptions thrown and END
+        private int openFailures;
+        private boolean open;
+        private int opens;
+        private int closes;
+
+        @Override
+        public void openDevice() {
+            if (open) {
+                throw new IllegalStateException("device already open");
+            }
+            opens++;
+            if (openFailures > 0) {
+                openFailures--;
+                throw new IllegalStateException("no device found");
+            }
+            open = true;
+        }
+
+        @Override
+        public void closeDevice() {
+            if (!open) {
+                throw new IllegalStateException("device not open");
+            }
+            open = false;
+            closes++;
+        }
+
+        @Override
+        public boolean isDeviceOpen() {
+            return open;
+        }
+
+        @Override
+        public ByteBuffer readHIDData() {
+            assertTrue(open, "read from closed device");
+            Object next = script.poll();
+            if (next instanceof RuntimeException e)
+                throw e;
+            return next == END ? null : (ByteBuffer) next;
+        }
+    }
+
+    //answers from the script instead of waiting
+    private static final class ScriptedMonitor implements ArrivalMonitor {
+        private final Deque<Boolean> arrivals = new ArrayDeque<>();
+        private Runnable onWait;
+        private int waits;
+        private boolean closed;
+
+        @Override
+        public boolean awaitArrival(long timeoutMillis) {
+            waits++;
+            if (onWait != null) {
+                onWait.run();
+                return false;
+            }
+            assertFalse(arrivals.isEmpty(), "more waits than scripted");
+            return arrivals.poll();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.abbytech.razer.analog.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpscRingTest {
+    private static SpscRing<long[]> ring(int capacity, SpscRing.WaitStrategy waitStrategy, boolean coalesce) {
+        return new SpscRing<>(capacity, () -> new long[1], waitStrategy, coalesce);
+    }
+
+    private static void offer(SpscRing<long[]> ring, long value) {
+        long[] slot = ring.claim();
+        assertNotNull(slot);
+        slot[0] = value;
+        ring.publish();
+    }
+
+    @Test
+    void capacityMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> ring(6, SpscRing.WaitStrategy.PARK, false));
+    }
+
+    @Test
+    void slotsAreTakenInOrder() {
+        SpscRing<long[]> ring = ring(4, SpscRing.WaitStrategy.PARK, false);
+        for (long value = 0; value < 10; value++) {
+            offer(ring, value);
+            offer(ring, value + 100);
+            assertEquals(value, ring.take()[0]);
+            assertEquals(value + 100, ring.take()[0]);
+        }
+        assertNull(ring.poll());
+    }
+
+    //the slot handed out by take() stays the consumer's until its next take()/poll()
+    @Test
+    void takenSlotIsHeldUntilTheNextTake() {
+        SpscRing<long[]> ring = ring(2, SpscRing.WaitStrategy.PARK, false);
+        offer(ring, 1);
+        offer(ring, 2);
+        assertNull(ring.tryClaim());
+        long[] first = ring.take();
+        assertEquals(1, first[0]);
+        assertNull(ring.tryClaim());
+        assertTrue(ring.hasNext());
+        assertEquals(2, ring.take()[0]);
+        assertSame(first, ring.tryClaim());
+        assertFalse(ring.hasNext());
+    }
+
+    @Test
+    void coalescingSkipsToTheNewestSlot() {
+        SpscRing<long[]> ring = ring(8, SpscRing.WaitStrategy.PARK, true);
+        for (long value = 1; value <= 5; value++) {
+            offer(ring, value);
+        }
+        assertEquals(5, ring.take()[0]);
+        assertEquals(4, ring.getCoalesced());
+        assertNull(ring.poll());
+        offer(ring, 6);
+        assertEquals(6, ring.poll()[0]);
+    }
+
+    @Test
+    void closedRingDrainsThenEnds() {
+        SpscRing<long[]> ring = ring(2, SpscRing.WaitStrategy.PARK, false);
+        offer(ring, 1);
+        offer(ring, 2);
+        ring.close();
+        assertTrue(ring.isClosed());
+        assertNull(ring.claim());
+        assertEquals(1, ring.take()[0]);
+        assertEquals(2, ring.take()[0]);
+        assertNull(ring.take());
+    }
+
+    @Test
+    void closeWakesAWaitingConsumer() throws InterruptedException {
+        SpscRing<long[]> ring = ring(2, SpscRing.WaitStrategy.PARK, false);
+        AtomicReference<Object> taken = new AtomicReference<>("not returned");
+        Thread consumer = new Thread(() -> taken.set(ring.take()));
+        consumer.start();
+        Thread.sleep(50);
+        ring.close();
+        consumer.join(5_000);
+        assertFalse(consumer.isAlive());
+        assertNull(taken.get());
+    }
+
+    @Test
+    void parkHandsOverEverySlotInOrder() throws InterruptedException {
+        handOver(SpscRing.WaitStrategy.PARK, 20_000);
+    }
+
+    @Test
+    void yieldHandsOverEverySlotInOrder() throws InterruptedException {
+        handOver(SpscRing.WaitStrategy.YIELD, 20_000);
+    }
+
+    @Test
+    void busySpinHandsOverEverySlotInOrder() throws InterruptedException {
+        handOver(SpscRing.WaitStrategy.BUSY_SPIN, 1_000); //each side spins out its time slice on a single cpu
+    }
+
+    //producer and consumer on their own threads, the small ring keeps both sides waiting for each other
+    private static void handOver(SpscRing.WaitStrategy waitStrategy, int count) throws InterruptedException {
+        SpscRing<long[]> ring = ring(4, waitStrategy, false);
+        Thread producer = new Thread(() -> {
+            for (long value = 0; value < count; value++) {
+                long[] slot = ring.claim();
+                slot[0] = value;
+                ring.publish();
+            }
+            ring.close();
+        });
+        producer.start();
+        long expected = 0;
+        long[] slot;
+        while ((slot = ring.take()) != null) {
+            assertEquals(expected++, slot[0]);
+        }
+        producer.join();
+        assertEquals(count, expected);
+    }
+}
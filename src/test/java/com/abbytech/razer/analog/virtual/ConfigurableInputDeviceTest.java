@@ -0,0 +1,180 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//profile switching between mappings with their own virtual devices
+class ConfigurableInputDeviceTest {
+    private static final int KEY_W = 0x12;
+
+    private final Layout layout = new HuntsmanV3ProLayout();
+    private final HidFrame frame = new HidFrame();
+    private final List<RecordingSink> created = new ArrayList<>();
+
+    private static InputDeviceConfig config(String deviceName, EventCode output) {
+        InputDeviceConfig.OutputMapping outputMapping = new InputDeviceConfig.OutputMapping();
+        outputMapping.setEventCode(output);
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setDeviceName(deviceName);
+        config.setDefaultActuationPoint(32767);
+        config.setInputOutputMapping(Map.of(EventCode.KEY_W, List.of(outputMapping)));
+        return config;
+    }
+
+    private ConfigurableInputDevice device(InputDeviceConfig config) {
+        return new ConfigurableInputDevice(outputDevice -> {
+            RecordingSink sink = new RecordingSink(outputDevice.getDeviceName());
+            created.add(sink);
+            return sink;
+        }, config, layout, List.of());
+    }
+
+    private void handle(ConfigurableInputDevice device, int value) {
+        frame.clear();
+        frame.add(KEY_W, EventCode.KEY_W, value);
+        device.handle(frame);
+    }
+
+    @Test
+    void switchingKeepsEveryProfileDeviceOpen() throws Exception {
+        ConfigurableInputDevice device = device(config("first", EventCode.BTN_TR2));
+        ConfigurableInputDevice.Mapping first = device.getMapping();
+        ConfigurableInputDevice.Mapping second = device.compile(config("second", EventCode.BTN_TL2));
+        device.retain(List.of(first, second));
+        device.open();
+        assertEquals(2, created.size());
+        RecordingSink firstSink = created.get(0);
+        RecordingSink secondSink = created.get(1);
+        assertTrue(firstSink.isOpen());
+        assertTrue(secondSink.isOpen());
+
+        handle(device, 40000);
+        assertEquals(List.of("BTN_TR2=1"), firstSink.events);
+        device.activate(second);
+        handle(device, 40000);
+        //the held button goes back to rest on a device that stays
+        assertEquals(List.of("BTN_TR2=1", "BTN_TR2=0"), firstSink.events);
+        assertEquals(List.of("BTN_TL2=1"), secondSink.events);
+        assertTrue(firstSink.isOpen());
+        assertEquals(0, firstSink.closed);
+
+        device.activate(first);
+        handle(device, 0);
+        assertEquals(List.of("BTN_TL2=1", "BTN_TL2=0"), secondSink.events);
+        assertEquals(2, created.size());
+        assertTrue(secondSink.isOpen());
+
+        device.close();
+        assertFalse(firstSink.isOpen());
+        assertFalse(secondSink.isOpen());
+    }
+
+    @Test
+    void devicesNoProfileUsesAreDestroyed() throws Exception {
+        ConfigurableInputDevice device = device(config("first", EventCode.BTN_TR2));
+        ConfigurableInputDevice.Mapping first = device.getMapping();
+        ConfigurableInputDevice.Mapping second = device.compile(config("second", EventCode.BTN_TL2));
+        device.retain(List.of(first, second));
+        device.open();
+        RecordingSink firstSink = created.get(0);
+        RecordingSink secondSink = created.get(1);
+
+        //an inactive profile reloaded with other outputs: its old device goes right away, the new one is opened
+        ConfigurableInputDevice.Mapping reloadedSecond = device.compile(config("second", EventCode.BTN_TL));
+        device.retain(List.of(first, reloadedSecond));
+        assertFalse(secondSink.isOpen());
+        assertTrue(created.get(2).isOpen());
+
+        //the active profile reloaded: its device stays until the switch away from it
+        ConfigurableInputDevice.Mapping reloadedFirst = device.compile(config("first", EventCode.BTN_TR));
+        device.retain(List.of(reloadedFirst, reloadedSecond));
+        assertTrue(firstSink.isOpen());
+        device.activate(reloadedFirst);
+        handle(device, 0);
+        assertFalse(firstSink.isOpen());
+
+        //and is forgotten, so compiling the old config again creates a new one
+        device.compile(config("first", EventCode.BTN_TR2));
+        assertEquals(5, created.size());
+        device.compile(config("second", EventCode.BTN_TL));
+        assertEquals(5, created.size());
+    }
+
+    //a trigger rests at the end of its range; coming back there is emitted even when closer than minAxisDelta
+    @Test
+    void triggerReturnsToRestDespiteMinAxisDelta() throws Exception {
+        InputDeviceConfig.OutputMapping outputMapping = new InputDeviceConfig.OutputMapping();
+        outputMapping.setEventCode(EventCode.ABS_RZ);
+        outputMapping.setPositive(true);
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setDeviceName("trigger");
+        config.setMinAxisDelta(1000);
+        config.setInputOutputMapping(Map.of(EventCode.KEY_W, List.of(outputMapping)));
+        ConfigurableInputDevice device = device(config);
+        device.open();
+        RecordingSink sink = created.getFirst();
+
+        handle(device, 40000);
+        handle(device, 500);
+        handle(device, 600); //smaller than minAxisDelta
+        handle(device, 0);
+        assertEquals(List.of("ABS_RZ=7233", "ABS_RZ=-32267", "ABS_RZ=-32767"), sink.events);
+    }
+
+    //committed events as "<event code>=<value>"
+    private static final class RecordingSink implements EventSink {
+        private final String deviceName;
+        private final List<String> events = new ArrayList<>();
+        private final List<String> queued = new ArrayList<>();
+        private boolean open;
+        private int closed;
+
+        private RecordingSink(String deviceName) {
+            this.deviceName = deviceName;
+        }
+
+        @Override
+        public void addCapability(EventCode... eventCodes) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void open() {
+            open = true;
+        }
+
+        @Override
+        public void queue(EventCode eventCode, int value) {
+            assertTrue(open, deviceName + " written while closed");
+            queued.add(eventCode + "=" + value);
+        }
+
+        @Override
+        public void syn() {
+            events.addAll(queued);
+            queued.clear();
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            closed++;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import com.abbytech.razer.analog.hid.HidFrame;
+import com.abbytech.razer.analog.layout.HuntsmanV3ProLayout;
+import com.abbytech.razer.analog.layout.Layout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+import uk.co.bithatch.linuxio.InputDevice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+//cross-checks MappingTable against ReferenceMapper for single keys, key pairs and all mapped keys at once,
+//sweeping travel values around every actuation point
+class MappingEquivalenceTest {
+    private final Layout layout = new HuntsmanV3ProLayout();
+
+    @Test
+    void testDeviceConfig() throws IOException {
+        check(load("testDeviceConfig.json"));
+    }
+
+    @Test
+    void testDeviceConfig2() throws IOException {
+        check(load("testDeviceConfig2.json"));
+    }
+
+    //half of the mappings moved to a second output device; each device must still match its share
+    @Test
+    void secondOutputDevice() throws IOException {
+        InputDeviceConfig config = load("testDeviceConfig.json");
+        InputDeviceConfig.OutputDeviceConfig second = new InputDeviceConfig.OutputDeviceConfig();
+        second.setId("p2");
+        second.setDeviceName("Player 2");
+        config.setOutputDevices(List.of(second));
+        int i = 0;
+        for (List<InputDeviceConfig.OutputMapping> outputMappings : config.getInputOutputMapping().values()) {
+            if (i++ % 2 == 0)
+                outputMappings.forEach(outputMapping -> outputMapping.setDevice("p2"));
+        }
+        check(config);
+    }
+
+    //deadzones, every curve type and REL_ outputs, none of which the sample configs use
+    @Test
+    void curvesAndRelativeOutputs() {
+        check(shapedConfig());
+    }
+
+    //hand computed values, so the table and the reference are not only checked against each other
+    @Test
+    void shapedOutputValues() {
+        MappingTable table = new MappingTable(shapedConfig(), layout);
+        assertEquals(Map.of(EventCode.ABS_X, 0), map(table, EventCode.KEY_A, 5535)); //inside the inner deadzone
+        assertEquals(Map.of(EventCode.ABS_X, -8192), map(table, EventCode.KEY_A, 35535)); //0.5^2 of the travel past the deadzone
+        assertEquals(Map.of(EventCode.ABS_X, 16384), map(table, EventCode.KEY_D, 35535)); //S curve midpoint
+        assertEquals(Map.of(EventCode.ABS_RZ, 8192), map(table, EventCode.KEY_W, 45000)); //0.75 of the way up to the outer deadzone -> 0.625
+        assertEquals(Map.of(EventCode.ABS_RZ, -32767), map(table, EventCode.KEY_W, 0));
+        assertEquals(Map.of(EventCode.REL_Y, 250_000), map(table, EventCode.KEY_I, 0xFFFF)); //speed 250
+        assertEquals(Map.of(EventCode.REL_X, 499_992), map(table, EventCode.KEY_K, Short.MAX_VALUE)); //default speed 1000
+        assertEquals(Map.of(EventCode.REL_WHEEL, 5_000), map(table, EventCode.KEY_J, 35535)); //default wheel speed 10
+    }
+
+    private InputDeviceConfig shapedConfig() {
+        Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping = new LinkedHashMap<>();
+        InputDeviceConfig.OutputMapping left = outputMapping(EventCode.ABS_X, false);
+        left.setInnerDeadzone(5535);
+        left.setCurve(curve(InputDeviceConfig.CurveType.EXPONENTIAL, null));
+        inputOutputMapping.put(EventCode.KEY_A, List.of(left));
+        InputDeviceConfig.OutputMapping right = outputMapping(EventCode.ABS_X, true);
+        right.setInnerDeadzone(5535);
+        right.setCurve(curve(InputDeviceConfig.CurveType.S_CURVE, null));
+        inputOutputMapping.put(EventCode.KEY_D, List.of(right));
+        InputDeviceConfig.OutputMapping trigger = outputMapping(EventCode.ABS_RZ, true);
+        trigger.setOuterDeadzone(5535);
+        trigger.setCurve(curve(InputDeviceConfig.CurveType.POINTS, List.of(List.of(0d, 0d), List.of(0.5, 0.25), List.of(1d, 1d))));
+        inputOutputMapping.put(EventCode.KEY_W, List.of(trigger, outputMapping(EventCode.BTN_TR2, false)));
+        InputDeviceConfig.OutputMapping slow = outputMapping(EventCode.REL_Y, true);
+        slow.setSpeed(250);
+        inputOutputMapping.put(EventCode.KEY_I, List.of(slow));
+        inputOutputMapping.put(EventCode.KEY_K, List.of(outputMapping(EventCode.REL_X, true)));
+        InputDeviceConfig.OutputMapping wheel = outputMapping(EventCode.REL_WHEEL, true);
+        wheel.setInnerDeadzone(5535);
+        inputOutputMapping.put(EventCode.KEY_J, List.of(wheel));
+        InputDeviceConfig config = new InputDeviceConfig();
+        config.setDeviceName("shaped");
+        config.setDefaultActuationPoint(Short.MAX_VALUE);
+        config.setInputOutputMapping(inputOutputMapping);
+        return config;
+    }
+
+    private static InputDeviceConfig.OutputMapping outputMapping(EventCode eventCode, boolean positive) {
+        InputDeviceConfig.OutputMapping outputMapping = new InputDeviceConfig.OutputMapping();
+        outputMapping.setEventCode(eventCode);
+        outputMapping.setPositive(positive);
+        return outputMapping;
+    }
+
+    private static InputDeviceConfig.Curve curve(InputDeviceConfig.CurveType type, List<List<Double>> points) {
+        InputDeviceConfig.Curve curve = new InputDeviceConfig.Curve();
+        curve.setType(type);
+        curve.setPoints(points);
+        return curve;
+    }
+
+    //outputs of a single key at the given travel, buttons left out
+    private Map<EventCode, Integer> map(MappingTable table, EventCode key, int value) {
+        int keyCode = Arrays.asList(layout.getEventCodeMap()).indexOf(key);
+        HidFrame frame = new HidFrame();
+        frame.add(keyCode, key, value);
+        OutputFrame outputFrame = new OutputFrame(table.getSlotCount());
+        table.map(frame, outputFrame);
+        Map<EventCode, Integer> outputs = new HashMap<>();
+        for (int i = 0; i < outputFrame.size(); i++) {
+            int slot = outputFrame.getSlot(i);
+            if (!table.isButtonSlot(slot))
+                outputs.put(table.getSlotEventCode(slot), table.isRelativeSlot(slot) ? outputFrame.getSum(i) : outputFrame.getValue(i));
+        }
+        return outputs;
+    }
+
+    private static InputDeviceConfig load(String name) throws IOException {
+        try (InputStream inputStream = MappingEquivalenceTest.class.getResourceAsStream("/" + name)) {
+            assertNotNull(inputStream, "config not found on the test classpath: " + name);
+            return new ObjectMapper().readValue(inputStream, InputDeviceConfig.class);
+        }
+    }
+
+    private void check(InputDeviceConfig config) {
+        MappingTable table = new MappingTable(config, layout);
+        for (int device = 0; device < table.getDeviceCount(); device++) {
+            check(config, layout, table, device);
+        }
+    }
+
+    //the reference knows a single output device, so every device is checked against its own share of the mapping
+    private static void check(InputDeviceConfig config, Layout layout, MappingTable table, int device) {
+        String id = MappingTable.outputDevices(config).get(device).getId();
+        Map<EventCode, List<InputDeviceConfig.OutputMapping>> deviceMapping = new LinkedHashMap<>();
+        config.getInputOutputMapping().forEach((eventCode, outputMappings) -> {
+            List<InputDeviceConfig.OutputMapping> deviceOutputMappings = outputMappings.stream().filter(outputMapping -> Objects.equals(outputMapping.getDevice(), id)).toList();
+            if (!deviceOutputMappings.isEmpty())
+                deviceMapping.put(eventCode, deviceOutputMappings);
+        });
+        ReferenceMapper reference = new ReferenceMapper(deviceMapping, config.getDefaultActuationPoint());
+        EventCode[] eventCodeMap = layout.getEventCodeMap();
+        OutputFrame outputFrame = new OutputFrame(table.getSlotCount());
+        HidFrame frame = new HidFrame();
+
+        List<Integer> keyCodes = new ArrayList<>();
+        for (int keyCode = 0; keyCode < MappingTable.KEY_COUNT; keyCode++) {
+            if (table.isMapped(keyCode))
+                keyCodes.add(keyCode);
+        }
+        int[] values = sampleValues(config);
+        int[] pairValues = {0, 1, Short.MAX_VALUE, Short.MAX_VALUE + 1, 0xFFFF};
+
+        for (int keyCode : keyCodes) {
+            for (int value : values) {
+                frame.clear();
+                frame.add(keyCode, eventCodeMap[keyCode], value);
+                compare(frame, table, device, reference, outputFrame);
+            }
+        }
+        for (int a : keyCodes) {
+            for (int b : keyCodes) {
+                if (a == b)
+                    continue;
+                for (int valueA : pairValues) {
+                    for (int valueB : pairValues) {
+                        frame.clear();
+                        frame.add(a, eventCodeMap[a], valueA);
+                        frame.add(b, eventCodeMap[b], valueB);
+                        compare(frame, table, device, reference, outputFrame);
+                    }
+                }
+            }
+        }
+        for (int value : values) {
+            frame.clear();
+            for (int i = 0; i < keyCodes.size() && i < HidFrame.MAX_KEYS; i++) {
+                frame.add(keyCodes.get(i), eventCodeMap[keyCodes.get(i)], value);
+            }
+            compare(frame, table, device, reference, outputFrame);
+        }
+    }
+
+    private static int[] sampleValues(InputDeviceConfig config) {
+        SortedSet<Integer> values = new TreeSet<>(List.of(0, 1, 2, 3, Short.MAX_VALUE - 1, (int) Short.MAX_VALUE,
+                Short.MAX_VALUE + 1, Short.MAX_VALUE + 2, 0xFFFE, 0xFFFF));
+        List<Integer> thresholds = new ArrayList<>(List.of(config.getDefaultActuationPoint()));
+        config.getInputOutputMapping().values().forEach(outputMappings ->
+                outputMappings.forEach(outputMapping -> {
+                    thresholds.add(outputMapping.getActuationPoint());
+                    thresholds.add(outputMapping.getInnerDeadzone());
+                    thresholds.add(0xFFFF - outputMapping.getOuterDeadzone());
+                }));
+        for (int value = 0; value <= 0xFFFF; value += 257) {
+            values.add(value); //curve shape
+        }
+        for (int threshold : thresholds) {
+            for (int value = threshold - 1; value <= threshold + 1; value++) {
+                if (value >= 0 && value <= 0xFFFF)
+                    values.add(value);
+            }
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void compare(HidFrame frame, MappingTable table, int device, ReferenceMapper reference, OutputFrame outputFrame) {
+        List<InputDevice.Event> events = new ArrayList<>();
+        for (int i = 0; i < frame.size(); i++) {
+            if (reference.canHandle(frame.getEventCode(i)))
+                events.add(new InputDevice.Event(frame.getEventCode(i), frame.getValue(i)));
+        }
+        Map<EventCode, Integer> expected = new HashMap<>();
+        reference.mapToInputDeviceEvents(events).forEach(event -> expected.put(event.getCode(), event.getValue()));
+
+        table.map(frame, outputFrame);
+        Map<EventCode, Integer> actual = new HashMap<>();
+        for (int i = 0; i < outputFrame.size(); i++) {
+            int slot = outputFrame.getSlot(i);
+            if (table.getSlotDevice(slot) != device)
+                continue;
+            actual.put(table.getSlotEventCode(slot), table.isRelativeSlot(slot) ? outputFrame.getSum(i) : outputFrame.getValue(i));
+        }
+        assertEquals(expected, actual, "mapping mismatch for " + events);
+    }
+}
@@ -0,0 +1,18 @@
+package com.abbytech.razer.analog.virtual;
+
+import org.junit.jupiter.api.Test;
+import uk.co.bithatch.linuxio.EventCode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UInputDeviceTest {
+    //a code that is not a key, button, axis or REL_ output is rejected when the device is configured
+    @Test
+    void rejectsUnsupportedCapabilities() {
+        UInputDevice device = new UInputDevice("test", (short) 0, (short) 0);
+        device.addCapability(EventCode.KEY_A, EventCode.BTN_SOUTH, EventCode.ABS_X, EventCode.REL_WHEEL);
+        assertThrows(IllegalArgumentException.class, () -> device.addCapability(EventCode.SYN_REPORT));
+        assertEquals(4, device.getCapabilities().size());
+    }
+}
@@ -0,0 +1,136 @@
+package com.abbytech.razer.analog.virtual;
+
+import com.abbytech.razer.analog.config.InputDeviceConfig;
+import uk.co.bithatch.linuxio.EventCode;
+import uk.co.bithatch.linuxio.InputDevice;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+//the original stream based mapper; kept as the reference MappingTable is tested (MappingEquivalenceTest) and
+//benchmarked (MappingBenchmark) against
+class ReferenceMapper {
+    private final Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping;
+    private final List<EventCode> triggerAxes;
+    private final int defaultActuationPoint;
+
+    ReferenceMapper(Map<EventCode, List<InputDeviceConfig.OutputMapping>> inputOutputMapping, int defaultActuationPoint) {
+        this.inputOutputMapping = inputOutputMapping;
+        this.defaultActuationPoint = defaultActuationPoint;
+        triggerAxes = inputOutputMapping.values().stream().flatMap(Collection::stream)
+                .collect(Collectors.groupingBy(InputDeviceConfig.OutputMapping::getEventCode))
+                .values()
+                .stream()
+                .filter(outputMappings ->
+                        outputMappings.stream().allMatch(InputDeviceConfig.OutputMapping::isPositive)
+                                ||
+                                outputMappings.stream().noneMatch(InputDeviceConfig.OutputMapping::isPositive))
+                .map(List::getFirst)
+                .map(InputDeviceConfig.OutputMapping::getEventCode)
+                .toList();
+    }
+
+    boolean canHandle(EventCode eventCode) {
+        return inputOutputMapping.containsKey(eventCode);
+    }
+
+    List<InputDevice.Event> mapToInputDeviceEvents(List<InputDevice.Event> eventParts) {
+        return eventParts.stream().map(this::mapToInputEventGeneric).flatMap(Collection::stream)
+                .collect(Collectors.groupingBy(InputDevice.Event::getCode))
+                .values()
+                .stream()
+                .map(events -> {
+                    InputDevice.Event event = events.stream().reduce(new InputDevice.Event(null, 0), (event1, event2) -> {
+                        int event1Value = event1.getValue();
+                        int event2Value = event2.getValue();
+                        int sum = event1Value + event2Value;
+
+                        return new InputDevice.Event(event1.getCode() != null ? event1.getCode() : event2.getCode(), sum);
+                    });
+                    if (MappingTable.isRelative(event.getCode()))
+                        return event; //velocity, not clamped to the axis range
+                    return new InputDevice.Event(event.getCode(), Math.clamp(event.getValue(), Short.MIN_VALUE, Short.MAX_VALUE));
+                }).collect(Collectors.toList());
+    }
+
+    private List<InputDevice.Event> mapToInputEventGeneric(InputDevice.Event event) {
+        int inputValue = event.getValue();
+        EventCode inputEventCode = event.getCode();
+
+        List<InputDeviceConfig.OutputMapping> outputMappings = inputOutputMapping.get(inputEventCode);
+
+        return outputMappings.stream().map(outputMapping -> {
+            EventCode outputEventCode = outputMapping.getEventCode();
+            int outputValue;
+            if (outputEventCode.isButton()) {
+                int actuationPoint = outputMapping.getActuationPoint() != 0 ? outputMapping.getActuationPoint() : defaultActuationPoint;
+                outputValue = inputValue > actuationPoint ? 1 : 0;
+                return new InputDevice.Event(outputEventCode, outputValue);
+            } else if (MappingTable.isRelative(outputEventCode)) {
+                int velocity = velocity(outputMapping, inputValue);
+                outputValue = outputMapping.isPositive() ? velocity : -velocity;
+            } else if (!outputEventCode.isKey())/*implied isAxis*/ {
+                boolean positive = outputMapping.isPositive();
+                int response = response(outputMapping, inputValue);
+                int axisValue = response / 2; //restrict to Short.MAX_VALUE; output values higher/lower than this seem to cause axes to go out of range
+                if (triggerAxes.contains(outputEventCode)) {
+                    int triggerAxisValue = response - Short.MAX_VALUE;
+                    outputValue = positive ? triggerAxisValue : triggerAxisValue * -1;
+                } else {
+                    outputValue = positive ? axisValue : axisValue * -1;
+                }
+            } else {
+                throw new IllegalArgumentException("mapping to key is unsupported");
+            }
+            return new InputDevice.Event(outputEventCode, outputValue);
+        }).collect(Collectors.toList());
+    }
+
+    //deadzones and curve evaluated per event, independent of the CurveTables lookup tables
+    private static int response(InputDeviceConfig.OutputMapping outputMapping, int inputValue) {
+        int top = outputMapping.getInnerDeadzone();
+        int bottom = 0xFFFF - outputMapping.getOuterDeadzone();
+        if (inputValue <= top)
+            return 0;
+        if (inputValue >= bottom)
+            return 0xFFFF;
+        double x = (double) (inputValue - top) / (bottom - top);
+        InputDeviceConfig.Curve curve = outputMapping.getCurve();
+        double y = x;
+        if (curve != null && curve.getType() != null) {
+            double exponent = curve.getExponent() == 0 ? 2 : curve.getExponent();
+            switch (curve.getType()) {
+                case EXPONENTIAL -> y = Math.pow(x, exponent);
+                case S_CURVE -> y = Math.pow(x, exponent) / (Math.pow(x, exponent) + Math.pow(1 - x, exponent));
+                case POINTS -> {
+                    List<List<Double>> points = curve.getPoints();
+                    y = points.getLast().get(1);
+                    for (int i = 0; i < points.size(); i++) {
+                        List<Double> point = points.get(i);
+                        if (x > point.get(0))
+                            continue;
+                        if (i == 0 || point.get(0).equals(points.get(i - 1).get(0))) {
+                            y = point.get(1);
+                        } else {
+                            List<Double> previous = points.get(i - 1);
+                            y = previous.get(1) + (point.get(1) - previous.get(1)) * (x - previous.get(0)) / (point.get(0) - previous.get(0));
+                        }
+                        break;
+                    }
+                }
+                case LINEAR -> {
+                }
+            }
+        }
+        return (int) Math.round(y * 0xFFFF);
+    }
+
+    //velocity in 1/1000 counts per second: the configured speed (1000/s, wheels 10/s) scaled by the response
+    private static int velocity(InputDeviceConfig.OutputMapping outputMapping, int inputValue) {
+        double speed = outputMapping.getSpeed();
+        if (speed == 0)
+            speed = outputMapping.getEventCode() == EventCode.REL_WHEEL || outputMapping.getEventCode() == EventCode.REL_HWHEEL ? 10 : 1000;
+        long milliSpeed = Math.round(speed * 1000);
+        return (int) (response(outputMapping, inputValue) * milliSpeed / 0xFFFF);
+    }
+}